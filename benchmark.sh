@@ -0,0 +1,42 @@
+#!/bin/sh
+
+# Builds and runs the JMH benchmarks in src/benchmark.
+#
+# JMH_CLASSPATH must name the JMH jars: jmh-core, jmh-generator-annprocess,
+# jopt-simple and commons-math3.  Any arguments are passed to JMH, so for
+# example "./benchmark.sh DBAccessorBenchmark.find -p recordCount=1000000"
+# runs only the find benchmarks against a million records.  With no
+# arguments every benchmark is run, and LockManagerBenchmark is run
+# with 1, 4, 16 and 64 threads.
+#
+# Database files for testing at scale are written by
+# "java -cp benchmark-classes benchmark.db.DatabaseGenerator -records n file",
+# and the server is loaded end to end over RMI by
+# "java -cp benchmark-classes benchmark.network.LoadGenerator -clients n".
+
+if [ -z "$JMH_CLASSPATH" ]; then
+    echo "JMH_CLASSPATH must name the JMH jars" >&2
+    exit 1
+fi
+
+cd `dirname $0`
+
+rm -rf benchmark-classes
+
+mkdir -p benchmark-classes
+
+javac -d benchmark-classes -cp "$JMH_CLASSPATH" -sourcepath src \
+    src/suncertify/db/*.java src/suncertify/network/*.java src/suncertify/application/*.java \
+    src/suncertify/presentation/*.java src/benchmark/db/*.java src/benchmark/network/*.java || exit 1
+
+CLASSPATH="benchmark-classes:$JMH_CLASSPATH"
+
+if [ $# -gt 0 ]; then
+    java -cp "$CLASSPATH" org.openjdk.jmh.Main "$@"
+else
+    java -cp "$CLASSPATH" org.openjdk.jmh.Main DBAccessorBenchmark -rf json -rff db-benchmark.json
+    for threads in 1 4 16 64; do
+        java -cp "$CLASSPATH" org.openjdk.jmh.Main LockManagerBenchmark -t $threads \
+            -rf json -rff lock-benchmark-$threads.json
+    done
+fi
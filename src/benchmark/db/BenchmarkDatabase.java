@@ -0,0 +1,59 @@
+package benchmark.db;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import suncertify.db.DBAccessor;
+import suncertify.db.Data;
+import suncertify.db.LockManager;
+
+/**
+ * Creates database files of a given number of records for the
+ * benchmarks with <code>DatabaseGenerator</code>.  Record <code>n</code>
+ * is named "Hotel n" and is in one of <code>LOCATIONS</code> locations,
+ * as are the records returned by <code>record</code>.
+ */
+public class BenchmarkDatabase {
+
+    /**
+     * The number of distinct locations.
+     */
+    public static final int LOCATIONS = 100;
+
+    /**
+     * Writes a database file of <code>recordCount</code> records
+     * to a temporary file, which is deleted when the JVM exits.
+     * @param recordCount the number of records.
+     * @return the path of the file.
+     * @throws IOException if the file cannot be written.
+     */
+    public static String create(int recordCount) throws IOException {
+        File file = File.createTempFile("benchmark", ".db");
+        file.deleteOnExit();
+        new DatabaseGenerator(recordCount, 0, 0, Math.max(1, recordCount), LOCATIONS, 1).generate(file);
+        return file.getPath();
+    }
+
+    /**
+     * Returns the fields of a generated record.
+     * @param recNo the number of the record.
+     * @return the fields of the record.
+     */
+    public static String[] record(int recNo) {
+        return new String[] {"Hotel " + recNo, "City " + (recNo % LOCATIONS), "4", "N",
+            "$150.00", "2005/07/27", ""};
+    }
+
+    /**
+     * Turns off the logging of the classes under test, which would 
+     * otherwise dominate the time of every operation.
+     */
+    public static void silenceLogging() {
+        for (Class<?> type : new Class<?>[] {DBAccessor.class, Data.class, LockManager.class}) {
+            Logger.getLogger(type.getName()).setLevel(Level.OFF);
+        }
+    }
+
+}
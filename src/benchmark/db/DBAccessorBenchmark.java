@@ -0,0 +1,134 @@
+package benchmark.db;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import suncertify.db.DBAccessor;
+import suncertify.db.RecordNotFoundException;
+import suncertify.db.StorageMode;
+
+/**
+ * Benchmarks the operations of <code>DBAccessor</code> against
+ * generated database files.  Every combination of parameters runs in a
+ * fork of its own, so that the heap held by the indexes of a large file,
+ * and the code compiled for one storage mode, do not carry over into
+ * the measurements of the next.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class DBAccessorBenchmark {
+
+    /**
+     * Criteria that match every record.
+     */
+    private static final String[] MATCH_ALL = {"", null, null, null, null, null, null};
+
+    /**
+     * Criteria that match the records in one location.
+     */
+    private static final String[] MATCH_PREFIX = {null, "City 7", null, null, null, null, null};
+
+    /**
+     * Criteria that match no record.
+     */
+    private static final String[] MATCH_NONE = {"No such hotel", null, null, null, null, null, null};
+
+    /**
+     * The number of records in the generated database file.
+     */
+    @Param({"10000", "100000", "1000000"})
+    public int recordCount;
+
+    /**
+     * How the database file is accessed.
+     */
+    @Param({"FILE", "MAPPED"})
+    public StorageMode storageMode;
+
+    /**
+     * The path of the generated database file.
+     */
+    private String path;
+
+    /**
+     * The accessor under test.
+     */
+    private DBAccessor accessor;
+
+    /**
+     * The number of the next record to create, so that every
+     * created record is distinct.
+     */
+    private final AtomicInteger nextCreated = new AtomicInteger();
+
+    @Setup(Level.Trial)
+    public void openDatabase() throws IOException {
+        path = BenchmarkDatabase.create(recordCount);
+        accessor = new DBAccessor(path, storageMode);
+        BenchmarkDatabase.silenceLogging();
+        nextCreated.set(recordCount + 1);
+    }
+
+    @TearDown(Level.Trial)
+    public void closeDatabase() throws IOException {
+        accessor.close();
+        new File(path).delete();
+    }
+
+    @Benchmark
+    public String[] readRecord() throws RecordNotFoundException {
+        return accessor.readRecord(randomRecNo());
+    }
+
+    @Benchmark
+    public int[] findMatchAll() {
+        return accessor.find(MATCH_ALL);
+    }
+
+    @Benchmark
+    public int[] findPrefix() {
+        return accessor.find(MATCH_PREFIX);
+    }
+
+    @Benchmark
+    public int[] findNoMatch() {
+        return accessor.find(MATCH_NONE);
+    }
+
+    @Benchmark
+    public int createRecord() {
+        return accessor.createRecord(BenchmarkDatabase.record(nextCreated.getAndIncrement()));
+    }
+
+    @Benchmark
+    public void updateRecord() {
+        int recNo = randomRecNo();
+        accessor.updateRecord(recNo, BenchmarkDatabase.record(recNo));
+    }
+
+    private int randomRecNo() {
+        return 1 + ThreadLocalRandom.current().nextInt(recordCount);
+    }
+
+}
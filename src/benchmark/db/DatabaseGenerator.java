@@ -0,0 +1,294 @@
+package benchmark.db;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Writes synthetic database files in the format that <code>DBAccessor</code>
+ * reads, for testing at scale.  Records are encoded into a fixed buffer and
+ * streamed to disk a batch at a time, so any number of records is written
+ * in constant memory.
+ * <p>
+ * Record <code>n</code> is named "Hotel " followed by a number that
+ * repeats every <code>nameCount</code> records, and is located in "City "
+ * followed by <code>n</code> modulo <code>locationCount</code>.  The
+ * remaining fields are random, from a fixed seed, so that the same
+ * arguments always generate the same file.
+ * <p>
+ * Usage: <code>java benchmark.db.DatabaseGenerator [options] file</code>
+ * with the options <code>-records n</code>, <code>-deleted ratio</code>,
+ * <code>-booked ratio</code>, <code>-names n</code>,
+ * <code>-locations n</code> and <code>-seed n</code>.
+ */
+public class DatabaseGenerator {
+
+    /**
+     * The magic cookie that starts the file.
+     */
+    private static final int MAGIC_COOKIE = 259;
+
+    /**
+     * The names of the fields, in file order.
+     */
+    private static final String[] FIELD_NAMES = {"name", "location", "size", "smoking", "rate", "date", "owner"};
+
+    /**
+     * The lengths of the fields, in file order.
+     */
+    private static final int[] FIELD_LENGTHS = {64, 64, 4, 1, 8, 10, 8};
+
+    /**
+     * The length of a record, including its deleted flag.
+     */
+    private static final int RECORD_LENGTH = 160;
+
+    /**
+     * The value of the flag of a deleted record.
+     */
+    private static final byte DELETED_FLAG = (byte) 0xFF;
+
+    /**
+     * The number of records written to disk at a time.
+     */
+    private static final int BATCH_SIZE = 4096;
+
+    /**
+     * The encoding of the fields.
+     */
+    private static final Charset US_ASCII = Charset.forName("US-ASCII");
+
+    /**
+     * The number of records to generate.
+     */
+    private final int recordCount;
+
+    /**
+     * The proportion of records that are deleted.
+     */
+    private final double deletedRatio;
+
+    /**
+     * The proportion of records that are booked.
+     */
+    private final double bookedRatio;
+
+    /**
+     * The number of distinct names.
+     */
+    private final int nameCount;
+
+    /**
+     * The number of distinct locations.
+     */
+    private final int locationCount;
+
+    /**
+     * The seed of the random fields.
+     */
+    private final long seed;
+
+    /**
+     * Class constructor.
+     * @param recordCount the number of records to generate.
+     * @param deletedRatio the proportion of records that are deleted,
+     *        from 0 to 1.
+     * @param bookedRatio the proportion of records that are booked,
+     *        from 0 to 1.
+     * @param nameCount the number of distinct names.
+     * @param locationCount the number of distinct locations.
+     * @param seed the seed of the random fields.
+     * @throws IllegalArgumentException if an argument is out of range.
+     */
+    public DatabaseGenerator(int recordCount, double deletedRatio, double bookedRatio,
+            int nameCount, int locationCount, long seed) {
+        if (recordCount < 0 || nameCount < 1 || locationCount < 1
+                || !(deletedRatio >= 0 && deletedRatio <= 1) || !(bookedRatio >= 0 && bookedRatio <= 1)) {
+            throw new IllegalArgumentException("Invalid generator arguments");
+        }
+        this.recordCount = recordCount;
+        this.deletedRatio = deletedRatio;
+        this.bookedRatio = bookedRatio;
+        this.nameCount = nameCount;
+        this.locationCount = locationCount;
+        this.seed = seed;
+    }
+
+    /**
+     * Writes the database file, replacing any existing file.
+     * @param file the file to write.
+     * @throws IOException if the file cannot be written.
+     */
+    public void generate(File file) throws IOException {
+        Random random = new Random(seed);
+        ByteBuffer batch = ByteBuffer.allocate(BATCH_SIZE * RECORD_LENGTH);
+        byte[] record = new byte[RECORD_LENGTH];
+
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(0);
+            FileChannel channel = raf.getChannel();
+            writeFully(channel, header());
+            for (int recNo = 1; recNo <= recordCount; recNo++) {
+                encodeRecord(recNo, random, record);
+                batch.put(record);
+                if (!batch.hasRemaining()) {
+                    batch.flip();
+                    writeFully(channel, batch);
+                    batch.clear();
+                }
+            }
+            batch.flip();
+            writeFully(channel, batch);
+        }
+    }
+
+    /**
+     * Returns the name of a record.
+     * @param recNo the number of the record.
+     * @return the name.
+     */
+    public String name(int recNo) {
+        return "Hotel " + ((recNo - 1) % nameCount + 1);
+    }
+
+    /**
+     * Returns the location of a record.
+     * @param recNo the number of the record.
+     * @return the location.
+     */
+    public String location(int recNo) {
+        return "City " + (recNo % locationCount);
+    }
+
+    /**
+     * Encodes the header of the file, which describes the fields.
+     * @return the header, ready to write.
+     */
+    private static ByteBuffer header() {
+        ByteBuffer header = ByteBuffer.allocate(RECORD_LENGTH);
+        header.putInt(MAGIC_COOKIE);
+        header.putShort((short) FIELD_NAMES.length);
+        for (int i = 0; i < FIELD_NAMES.length; i++) {
+            header.put((byte) FIELD_NAMES[i].length());
+            header.put(FIELD_NAMES[i].getBytes(US_ASCII));
+            header.put((byte) FIELD_LENGTHS[i]);
+        }
+        header.flip();
+        return header;
+    }
+
+    /**
+     * Encodes a record, padding its fields with spaces as in
+     * the supplied database file.
+     * @param recNo the number of the record.
+     * @param random the source of the random fields.
+     * @param record the buffer to encode the record into.
+     */
+    private void encodeRecord(int recNo, Random random, byte[] record) {
+        Arrays.fill(record, (byte) ' ');
+        boolean deleted = random.nextDouble() < deletedRatio;
+        boolean booked = random.nextDouble() < bookedRatio;
+        record[0] = deleted ? DELETED_FLAG : 0;
+
+        String[] fields = {
+            name(recNo),
+            location(recNo),
+            Integer.toString(1 + random.nextInt(6)),
+            random.nextBoolean() ? "Y" : "N",
+            "$" + (50 + random.nextInt(400)) + ".00",
+            "2005/" + twoDigits(1 + random.nextInt(12)) + "/" + twoDigits(1 + random.nextInt(28)),
+            booked ? Integer.toString(10000000 + random.nextInt(90000000)) : ""
+        };
+        int offset = 1;
+        for (int i = 0; i < fields.length; i++) {
+            byte[] field = fields[i].getBytes(US_ASCII);
+            System.arraycopy(field, 0, record, offset, Math.min(field.length, FIELD_LENGTHS[i]));
+            offset += FIELD_LENGTHS[i];
+        }
+    }
+
+    /**
+     * Formats a month or day of the month as two digits.
+     * @param value the month or day.
+     * @return the two digits.
+     */
+    private static String twoDigits(int value) {
+        return (value < 10) ? "0" + value : Integer.toString(value);
+    }
+
+    /**
+     * Writes the whole of a buffer to a channel.
+     * @param channel the channel.
+     * @param buffer the buffer.
+     * @throws IOException if the buffer cannot be written.
+     */
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    /**
+     * Generates a database file from the command line.
+     * @param args the options, followed by the path of the file.
+     * @throws IOException if the file cannot be written.
+     */
+    public static void main(String[] args) throws IOException {
+        int records = 100000;
+        double deleted = 0;
+        double booked = 0;
+        int names = -1;
+        int locations = 100;
+        long seed = 1;
+        String path = null;
+
+        try {
+            for (int i = 0; i < args.length; i++) {
+                String arg = args[i];
+                if (arg.equals("-records")) {
+                    records = Integer.parseInt(args[++i]);
+                }
+                else if (arg.equals("-deleted")) {
+                    deleted = Double.parseDouble(args[++i]);
+                }
+                else if (arg.equals("-booked")) {
+                    booked = Double.parseDouble(args[++i]);
+                }
+                else if (arg.equals("-names")) {
+                    names = Integer.parseInt(args[++i]);
+                }
+                else if (arg.equals("-locations")) {
+                    locations = Integer.parseInt(args[++i]);
+                }
+                else if (arg.equals("-seed")) {
+                    seed = Long.parseLong(args[++i]);
+                }
+                else if (path == null && !arg.startsWith("-")) {
+                    path = arg;
+                }
+                else {
+                    throw new IllegalArgumentException(arg);
+                }
+            }
+            if (path == null) {
+                throw new IllegalArgumentException("no file");
+            }
+            DatabaseGenerator generator = new DatabaseGenerator(records, deleted, booked,
+                    (names < 1) ? Math.max(1, records) : names, locations, seed);
+            long start = System.nanoTime();
+            generator.generate(new File(path));
+            System.out.println("Wrote " + records + " records to " + path + " in "
+                    + (System.nanoTime() - start) / 1000000 + " ms");
+        } catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
+            System.err.println("Usage: java benchmark.db.DatabaseGenerator [-records n] [-deleted ratio] "
+                    + "[-booked ratio] [-names n] [-locations n] [-seed n] file");
+            System.exit(1);
+        }
+    }
+
+}
@@ -0,0 +1,65 @@
+package benchmark.db;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import suncertify.db.LockManager;
+import suncertify.db.RecordNotFoundException;
+import suncertify.db.SecurityException;
+
+/**
+ * Benchmarks locking and unlocking a record with <code>LockManager</code>,
+ * both when every thread locks the same record and when threads lock
+ * records spread over a large range.  Run with <code>-t</code> set to
+ * the number of threads, as <code>benchmark.sh</code> does for 1 to 64.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class LockManagerBenchmark {
+
+    /**
+     * The number of records over which uncontended locks are spread.
+     */
+    private static final int RECORDS = 1000000;
+
+    /**
+     * The lock manager under test.
+     */
+    private LockManager manager;
+
+    @Setup(Level.Trial)
+    public void createManager() {
+        manager = new LockManager();
+        BenchmarkDatabase.silenceLogging();
+    }
+
+    @Benchmark
+    public void lockUnlockContended() throws RecordNotFoundException, SecurityException {
+        long cookie = manager.lockRecord(1);
+        manager.unlockRecord(1, cookie);
+    }
+
+    @Benchmark
+    public void lockUnlockUncontended() throws RecordNotFoundException, SecurityException {
+        int recNo = 1 + ThreadLocalRandom.current().nextInt(RECORDS);
+        long cookie = manager.lockRecord(recNo);
+        manager.unlockRecord(recNo, cookie);
+    }
+
+}
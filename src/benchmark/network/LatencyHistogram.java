@@ -0,0 +1,84 @@
+package benchmark.network;
+
+import suncertify.db.LatencyBuckets;
+
+/**
+ * Counts latencies in the same <code>LatencyBuckets</code> as the server's
+ * own latency metrics, but with sixty four buckets between consecutive
+ * powers of two rather than sixteen, so that any latency is recorded in
+ * constant space and time to within 1/64 of its value.  Not thread safe:
+ * each thread records into its own histogram, and the histograms are added
+ * together once recording has finished.
+ */
+public class LatencyHistogram {
+
+    /**
+     * The buckets that latencies are counted in.
+     */
+    private static final LatencyBuckets BUCKETS = new LatencyBuckets(6);
+
+    /**
+     * The number of values recorded in each bucket.
+     */
+    private final long[] counts = new long[BUCKETS.getBucketCount()];
+
+    /**
+     * The number of values recorded.
+     */
+    private long totalCount;
+
+    /**
+     * The largest value recorded.
+     */
+    private long maxValue;
+
+    /**
+     * Records a latency.
+     * @param nanos the latency in nanoseconds.
+     */
+    public void record(long nanos) {
+        long value = Math.max(0, nanos);
+        counts[BUCKETS.bucketOf(value)]++;
+        totalCount++;
+        maxValue = Math.max(maxValue, value);
+    }
+
+    /**
+     * Adds the values recorded in another histogram to this one.
+     * @param other the other histogram.
+     */
+    public void add(LatencyHistogram other) {
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] += other.counts[i];
+        }
+        totalCount += other.totalCount;
+        maxValue = Math.max(maxValue, other.maxValue);
+    }
+
+    /**
+     * Getter.
+     * @return the number of values recorded.
+     */
+    public long getTotalCount() {
+        return totalCount;
+    }
+
+    /**
+     * Getter.
+     * @return the largest value recorded, in nanoseconds.
+     */
+    public long getMaxValue() {
+        return maxValue;
+    }
+
+    /**
+     * Returns the value below which a proportion of the recorded
+     * values fall, to the precision of the buckets.
+     * @param percentile the percentile, from 0 to 100.
+     * @return the value in nanoseconds, or 0 if none have been recorded.
+     */
+    public long getValueAtPercentile(double percentile) {
+        return BUCKETS.valueAtPercentile(counts, totalCount, maxValue, percentile);
+    }
+
+}
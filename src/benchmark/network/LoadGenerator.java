@@ -0,0 +1,421 @@
+package benchmark.network;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import benchmark.db.BenchmarkDatabase;
+import benchmark.db.DatabaseGenerator;
+import suncertify.application.DatabaseConnection;
+import suncertify.db.CloseableDB;
+import suncertify.db.LockTimeoutException;
+import suncertify.db.RecordNotFoundException;
+import suncertify.db.SecurityException;
+import suncertify.network.Server;
+import suncertify.network.ServerBusyException;
+
+/**
+ * Drives a local server with simulated network clients and reports the
+ * throughput and latency percentiles of each kind of operation.  The
+ * server is started with <code>Server.startServer</code> and each client
+ * connects with <code>DatabaseConnection.getRemoteConnection</code>, as
+ * the network client does.  Each client repeatedly picks an operation
+ * from the mix and performs it without pausing:
+ * <ul>
+ * <li>search: the first page of the rooms in a random location.</li>
+ * <li>book: <code>bookRecord</code> on a random record.</li>
+ * <li>release: lock a random record, clear its owner and unlock it.</li>
+ * </ul>
+ * Usage: <code>java benchmark.network.LoadGenerator [options]</code> with
+ * the options <code>-clients n</code>, <code>-duration seconds</code>,
+ * <code>-warmup seconds</code>, <code>-mix search:book:release</code>,
+ * <code>-records n</code>, <code>-db file</code> and <code>-port n</code>.
+ */
+public class LoadGenerator {
+
+    /**
+     * The operations, in the order of the mix.
+     */
+    private static final String[] OPERATIONS = {"search", "book", "release"};
+
+    /**
+     * The index of the owner field in a record.
+     */
+    private static final int OWNER_INDEX = 6;
+
+    /**
+     * The number of rooms on a page of search results, as in the client.
+     */
+    private static final int SEARCH_PAGE_SIZE = 100;
+
+    /**
+     * How long to wait for a lock, in milliseconds, as in the client.
+     */
+    private static final long LOCK_TIMEOUT = 5000;
+
+    /**
+     * The number of clients.
+     */
+    private int clients = 16;
+
+    /**
+     * How long to measure for, in seconds.
+     */
+    private int durationSeconds = 30;
+
+    /**
+     * How long to run before measuring, in seconds.
+     */
+    private int warmupSeconds = 5;
+
+    /**
+     * The relative weights of the operations.
+     */
+    private int[] mix = {80, 15, 5};
+
+    /**
+     * The number of records to generate if no database is given.
+     */
+    private int records = 10000;
+
+    /**
+     * The database file, or null to generate one.
+     */
+    private String databaseLocation;
+
+    /**
+     * The port of the RMI registry.
+     */
+    private int port = 1099;
+
+    /**
+     * Runs the load generator from the command line.
+     * @param args the options.
+     * @throws Exception if the server cannot be started or a client fails.
+     */
+    public static void main(String[] args) throws Exception {
+        LoadGenerator generator = new LoadGenerator();
+        try {
+            generator.parse(args);
+        } catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
+            System.err.println("Usage: java benchmark.network.LoadGenerator [-clients n] [-duration seconds] "
+                    + "[-warmup seconds] [-mix search:book:release] [-records n] [-db file] [-port n]");
+            System.exit(1);
+        }
+        generator.run();
+        System.exit(0);
+    }
+
+    /**
+     * Parses the options.
+     * @param args the options.
+     * @throws IllegalArgumentException if an option is invalid.
+     */
+    private void parse(String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if (arg.equals("-clients")) {
+                clients = Integer.parseInt(args[++i]);
+            }
+            else if (arg.equals("-duration")) {
+                durationSeconds = Integer.parseInt(args[++i]);
+            }
+            else if (arg.equals("-warmup")) {
+                warmupSeconds = Integer.parseInt(args[++i]);
+            }
+            else if (arg.equals("-mix")) {
+                String[] weights = args[++i].split(":");
+                if (weights.length != OPERATIONS.length) {
+                    throw new IllegalArgumentException(arg);
+                }
+                for (int j = 0; j < weights.length; j++) {
+                    mix[j] = Integer.parseInt(weights[j]);
+                }
+            }
+            else if (arg.equals("-records")) {
+                records = Integer.parseInt(args[++i]);
+            }
+            else if (arg.equals("-db")) {
+                databaseLocation = args[++i];
+            }
+            else if (arg.equals("-port")) {
+                port = Integer.parseInt(args[++i]);
+            }
+            else {
+                throw new IllegalArgumentException(arg);
+            }
+        }
+        int totalWeight = 0;
+        for (int weight : mix) {
+            if (weight < 0) {
+                throw new IllegalArgumentException("mix");
+            }
+            totalWeight += weight;
+        }
+        if (clients < 1 || durationSeconds < 1 || warmupSeconds < 0 || totalWeight == 0) {
+            throw new IllegalArgumentException();
+        }
+    }
+
+    /**
+     * Starts the server, runs the clients and prints the report.
+     * @throws Exception if the server cannot be started or a client fails.
+     */
+    private void run() throws Exception {
+        if (databaseLocation == null) {
+            File file = File.createTempFile("load", ".db");
+            file.deleteOnExit();
+            new DatabaseGenerator(records, 0, 0, records, BenchmarkDatabase.LOCATIONS, 1).generate(file);
+            databaseLocation = file.getPath();
+        }
+        Server.startServer(databaseLocation, port);
+
+        List<CloseableDB> connections = new ArrayList<CloseableDB>();
+        for (int i = 0; i < clients; i++) {
+            connections.add(DatabaseConnection.getRemoteConnection("localhost", port));
+        }
+        silenceLogging();
+        int recordCount = connections.get(0).find(new String[] {"", null, null, null, null, null, null}).length;
+        System.out.println("Running " + clients + " clients against " + recordCount + " records for "
+                + warmupSeconds + "s warmup and " + durationSeconds + "s measurement");
+
+        long start = System.nanoTime();
+        long measureFrom = start + TimeUnit.SECONDS.toNanos(warmupSeconds);
+        long measureUntil = measureFrom + TimeUnit.SECONDS.toNanos(durationSeconds);
+        CountDownLatch finished = new CountDownLatch(clients);
+        List<Client> running = new ArrayList<Client>();
+        for (int i = 0; i < clients; i++) {
+            Client client = new Client(i, connections.get(i), recordCount, measureFrom, measureUntil, finished);
+            running.add(client);
+            Thread thread = new Thread(client, "LoadGenerator-client-" + i);
+            thread.setDaemon(true);
+            thread.start();
+        }
+        finished.await();
+
+        report(running);
+        Server.closeDatabaseConnection();
+    }
+
+    /**
+     * Turns off the logging of the classes that the clients exercise,
+     * once they have been initialised, so that it does not dominate the
+     * latencies measured.
+     */
+    private static void silenceLogging() {
+        BenchmarkDatabase.silenceLogging();
+        for (Class<?> type : new Class<?>[] {Server.class, DatabaseConnection.class}) {
+            Logger.getLogger(type.getName()).setLevel(Level.OFF);
+        }
+    }
+
+    /**
+     * Adds up the results of the clients and prints them.
+     * @param running the clients, which have finished.
+     */
+    private void report(List<Client> running) {
+        System.out.println();
+        System.out.println(String.format("%-8s %10s %10s %10s %10s %10s %10s %8s %8s %8s", "op", "count",
+                "ops/s", "p50 us", "p99 us", "p999 us", "max us", "timeout", "busy", "error"));
+        for (int op = 0; op < OPERATIONS.length; op++) {
+            LatencyHistogram histogram = new LatencyHistogram();
+            long timeouts = 0;
+            long busy = 0;
+            long errors = 0;
+            for (Client client : running) {
+                histogram.add(client.histograms[op]);
+                timeouts += client.timeouts[op];
+                busy += client.busy[op];
+                errors += client.errors[op];
+            }
+            System.out.println(String.format("%-8s %10d %10.1f %10d %10d %10d %10d %8d %8d %8d",
+                    OPERATIONS[op], histogram.getTotalCount(),
+                    (double) histogram.getTotalCount() / durationSeconds,
+                    micros(histogram.getValueAtPercentile(50)), micros(histogram.getValueAtPercentile(99)),
+                    micros(histogram.getValueAtPercentile(99.9)), micros(histogram.getMaxValue()),
+                    timeouts, busy, errors));
+        }
+    }
+
+    /**
+     * Converts nanoseconds to microseconds.
+     * @param nanos the nanoseconds.
+     * @return the microseconds.
+     */
+    private static long micros(long nanos) {
+        return TimeUnit.NANOSECONDS.toMicros(nanos);
+    }
+
+    /**
+     * A simulated network client.  Only the operations that start
+     * within the measurement period are recorded.
+     */
+    private class Client implements Runnable {
+
+        /**
+         * The connection to the server.
+         */
+        private final CloseableDB database;
+
+        /**
+         * The number of records, which are numbered from one.
+         */
+        private final int recordCount;
+
+        /**
+         * When to start recording, from <code>System.nanoTime</code>.
+         */
+        private final long measureFrom;
+
+        /**
+         * When to stop, from <code>System.nanoTime</code>.
+         */
+        private final long measureUntil;
+
+        /**
+         * Counted down when the client stops.
+         */
+        private final CountDownLatch finished;
+
+        /**
+         * The owner that the client books records for.
+         */
+        private final String owner;
+
+        /**
+         * Chooses operations and records.
+         */
+        private final Random random;
+
+        /**
+         * The latencies of the completed operations of each kind.
+         */
+        private final LatencyHistogram[] histograms = new LatencyHistogram[OPERATIONS.length];
+
+        /**
+         * The number of operations of each kind that timed out waiting for a lock.
+         */
+        private final long[] timeouts = new long[OPERATIONS.length];
+
+        /**
+         * The number of operations of each kind that the server turned away.
+         */
+        private final long[] busy = new long[OPERATIONS.length];
+
+        /**
+         * The number of operations of each kind that failed otherwise.
+         */
+        private final long[] errors = new long[OPERATIONS.length];
+
+        /**
+         * Class constructor.
+         * @param id the number of the client.
+         * @param database the connection to the server.
+         * @param recordCount the number of records.
+         * @param measureFrom when to start recording.
+         * @param measureUntil when to stop.
+         * @param finished counted down when the client stops.
+         */
+        Client(int id, CloseableDB database, int recordCount, long measureFrom, long measureUntil,
+                CountDownLatch finished) {
+            this.database = database;
+            this.recordCount = recordCount;
+            this.measureFrom = measureFrom;
+            this.measureUntil = measureUntil;
+            this.finished = finished;
+            this.owner = Integer.toString(10000000 + id);
+            this.random = new Random(id);
+            for (int i = 0; i < histograms.length; i++) {
+                histograms[i] = new LatencyHistogram();
+            }
+        }
+
+        @Override
+        public void run() {
+            try {
+                long now;
+                while ((now = System.nanoTime()) < measureUntil) {
+                    int op = chooseOperation();
+                    boolean measured = now >= measureFrom;
+                    try {
+                        perform(op);
+                        if (measured) {
+                            histograms[op].record(System.nanoTime() - now);
+                        }
+                    } catch (LockTimeoutException e) {
+                        if (measured) {
+                            timeouts[op]++;
+                        }
+                    } catch (ServerBusyException e) {
+                        if (measured) {
+                            busy[op]++;
+                        }
+                    } catch (RuntimeException | RecordNotFoundException | SecurityException e) {
+                        if (measured) {
+                            errors[op]++;
+                        }
+                    }
+                }
+            } finally {
+                finished.countDown();
+            }
+        }
+
+        /**
+         * Chooses an operation according to the mix.
+         * @return the index of the operation.
+         */
+        private int chooseOperation() {
+            int totalWeight = 0;
+            for (int weight : mix) {
+                totalWeight += weight;
+            }
+            int choice = random.nextInt(totalWeight);
+            for (int op = 0; op < mix.length; op++) {
+                choice -= mix[op];
+                if (choice < 0) {
+                    return op;
+                }
+            }
+            return 0;
+        }
+
+        /**
+         * Performs an operation.
+         * @param op the index of the operation.
+         * @throws LockTimeoutException if a lock is not granted in time.
+         * @throws RecordNotFoundException if a record does not exist.
+         * @throws SecurityException if a lock is lost.
+         */
+        private void perform(int op) throws LockTimeoutException, RecordNotFoundException,
+                SecurityException {
+            int recNo = 1 + random.nextInt(recordCount);
+            switch (op) {
+                case 0:
+                    String location = "City " + random.nextInt(BenchmarkDatabase.LOCATIONS);
+                    database.findPage(new String[] {null, location, null, null, null, null, null},
+                            1, SEARCH_PAGE_SIZE);
+                    break;
+                case 1:
+                    database.bookRecord(recNo, owner, LOCK_TIMEOUT);
+                    break;
+                default:
+                    long cookie = database.tryLock(recNo, LOCK_TIMEOUT);
+                    try {
+                        String[] data = database.read(recNo);
+                        data[OWNER_INDEX] = "";
+                        database.update(recNo, data, cookie);
+                    } finally {
+                        database.unlock(recNo, cookie);
+                    }
+                    break;
+            }
+        }
+    }
+
+}
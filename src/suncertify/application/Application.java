@@ -168,7 +168,14 @@ public class Application {
 	 */
 	private void createRemoteConnection(String hostname, int port) {
 		try {
-			CloseableDB dataAccess = DatabaseConnection.getRemoteConnection(hostname, port);
+			/**
+			 * The binary protocol is used in place of RMI only if its
+			 * port has been configured by hand in suncertify.properties.
+			 */
+			Integer binaryPort = PropertiesAccessor.getBinaryPort(mode);
+			CloseableDB dataAccess = (binaryPort == null)
+			        ? DatabaseConnection.getRemoteConnection(hostname, port)
+			        : DatabaseConnection.getBinaryConnection(hostname, binaryPort);
 			createClientGUI(dataAccess);
 		} catch (DBException | NetworkException e) {
 			Dialogs.showErrorDialog(null, e.getMessage(), "Could not connect to server");
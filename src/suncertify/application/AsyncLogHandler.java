@@ -0,0 +1,311 @@
+package suncertify.application;
+
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.text.DateFormat;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.ErrorManager;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.SimpleFormatter;
+
+/**
+ * A <code>Handler</code> that writes log records to <code>System.err</code>
+ * from a background thread, so that logging threads never wait for the
+ * console or for each other.  <code>publish</code> places each record in
+ * a bounded ring buffer without taking a lock, and a single daemon thread
+ * drains the buffer and writes the records.  If the buffer is full a
+ * record below <code>WARNING</code> is dropped and counted, rather than
+ * holding up the thread that logged it, and the number dropped is written
+ * once there is room.  A warning or severe record is never dropped, but
+ * written by the thread that logged it.
+ * <p>
+ * Each record is written on one line as its time, level, the name of the
+ * thread that logged it, the name of its logger and its message.  The
+ * source class of a record is not inferred, as that would walk the stack
+ * of the logging thread.
+ *
+ * @author John Harding
+ */
+public class AsyncLogHandler extends Handler {
+
+    /**
+     * The number of records that the buffer holds.  A power of two.
+     */
+    private static final int CAPACITY = 8192;
+
+    /**
+     * How long the drain thread sleeps when the buffer is empty, in milliseconds.
+     */
+    private static final long DRAIN_INTERVAL = 10;
+
+    /**
+     * How long <code>close</code> waits for the buffer to
+     * be drained, in milliseconds.
+     */
+    private static final long CLOSE_TIMEOUT = 1000;
+
+    /**
+     * The buffered records.  A slot is set by the thread that claimed
+     * it and cleared by the drain thread once the record is taken.
+     */
+    private final AtomicReferenceArray<Event> slots = new AtomicReferenceArray<Event>(CAPACITY);
+
+    /**
+     * The sequence number of the next slot to be claimed.
+     */
+    private final AtomicLong tail = new AtomicLong();
+
+    /**
+     * The sequence number of the next slot to be drained.
+     * Only changed by the drain thread.
+     */
+    private volatile long head;
+
+    /**
+     * The number of records dropped because the buffer was full.
+     */
+    private final AtomicLong dropped = new AtomicLong();
+
+    /**
+     * The number of dropped records that have been reported.
+     * Only used by the drain thread.
+     */
+    private long droppedReported;
+
+    /**
+     * The format of the time of a record.
+     */
+    private static final String TIME_FORMAT = "yyyy-MM-dd HH:mm:ss.SSS";
+
+    /**
+     * Formats the times of records written by the drain thread.
+     */
+    private final DateFormat drainTimeFormat = new SimpleDateFormat(TIME_FORMAT);
+
+    /**
+     * Where the records are written.
+     */
+    private final PrintStream out;
+
+    /**
+     * Drains the buffer.
+     */
+    private final Thread drainThread;
+
+    /**
+     * Set once the handler is closed.
+     */
+    private volatile boolean closed;
+
+    /**
+     * Class constructor.  Starts the drain thread.
+     */
+    public AsyncLogHandler() {
+        out = System.err;
+        setFormatter(new SimpleFormatter());
+        drainThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                drain();
+            }
+        }, "AsyncLogHandler-drain");
+        drainThread.setDaemon(true);
+        drainThread.start();
+    }
+
+    /**
+     * Places a record in the buffer, or drops it if the buffer
+     * is full.  Never blocks.
+     * @param record the record.
+     */
+    @Override
+    public void publish(LogRecord record) {
+        if (closed || !isLoggable(record)) {
+            return;
+        }
+        long sequence;
+        do {
+            sequence = tail.get();
+            if (sequence - head >= CAPACITY) {
+                overflow(record);
+                return;
+            }
+        } while (!tail.compareAndSet(sequence, sequence + 1));
+
+        /**
+         * The slot is free, as the drain thread clears a slot before
+         * advancing head past it.
+         */
+        slots.set(slotOf(sequence), new Event(record, Thread.currentThread().getName()));
+    }
+
+    /**
+     * Flushes the records that have been written.  Records still
+     * in the buffer are written by the drain thread in due course.
+     */
+    @Override
+    public void flush() {
+        out.flush();
+    }
+
+    /**
+     * Stops accepting records and waits for a short while
+     * for the buffer to be drained.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        LockSupport.unpark(drainThread);
+        try {
+            drainThread.join(CLOSE_TIMEOUT);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+    }
+
+    /**
+     * Getter.
+     * @return the number of records dropped because the buffer was full.
+     */
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    /**
+     * Handles a record that does not fit in the buffer.
+     * @param record the record.
+     */
+    private void overflow(LogRecord record) {
+        if (record.getLevel().intValue() < Level.WARNING.intValue()) {
+            dropped.incrementAndGet();
+            return;
+        }
+        DateFormat timeFormat = new SimpleDateFormat(TIME_FORMAT);
+        out.print(format(new Event(record, Thread.currentThread().getName()), timeFormat));
+        out.flush();
+    }
+
+    /**
+     * Writes the buffered records until the handler is closed and
+     * the buffer is empty.  Runs on the drain thread.  The records
+     * available at once are written together, as writing each of
+     * them separately would flush the stream for each.
+     */
+    private void drain() {
+        StringBuilder batch = new StringBuilder();
+        while (true) {
+            long claimed = tail.get();
+            if (head == claimed) {
+                reportDropped();
+                out.flush();
+                if (closed) {
+                    return;
+                }
+                LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(DRAIN_INTERVAL));
+                continue;
+            }
+            batch.setLength(0);
+            while (head != claimed) {
+                int slot = slotOf(head);
+                Event event = slots.get(slot);
+                if (event == null) {
+                    /**
+                     * The slot has been claimed but its record
+                     * not yet set, which is a matter of moments.
+                     */
+                    Thread.yield();
+                    continue;
+                }
+                slots.set(slot, null);
+                head++;
+                batch.append(format(event, drainTimeFormat));
+            }
+            out.print(batch);
+        }
+    }
+
+    /**
+     * Writes a line reporting the records dropped since the last report.
+     */
+    private void reportDropped() {
+        long count = dropped.get();
+        if (count > droppedReported) {
+            out.println("AsyncLogHandler: " + (count - droppedReported)
+                    + " log records dropped as the buffer was full");
+            droppedReported = count;
+        }
+    }
+
+    /**
+     * Formats a record as a line, followed by the stack
+     * trace of its exception if it has one.
+     * @param event the record and the name of the thread that logged it.
+     * @param timeFormat formats the time of the record.
+     * @return the line, or an empty string if the record cannot be formatted.
+     */
+    private String format(Event event, DateFormat timeFormat) {
+        LogRecord record = event.record;
+        try {
+            StringBuilder line = new StringBuilder();
+            line.append(timeFormat.format(new Date(record.getMillis()))).append(' ')
+                    .append(record.getLevel().getName()).append(" [").append(event.threadName).append("] ")
+                    .append(record.getLoggerName()).append(": ")
+                    .append(getFormatter().formatMessage(record)).append(System.lineSeparator());
+            if (record.getThrown() != null) {
+                StringWriter trace = new StringWriter();
+                record.getThrown().printStackTrace(new PrintWriter(trace));
+                line.append(trace);
+            }
+            return line.toString();
+        } catch (RuntimeException e) {
+            reportError("Could not format log record", e, ErrorManager.FORMAT_FAILURE);
+            return "";
+        }
+    }
+
+    /**
+     * Returns the slot of a sequence number.
+     * @param sequence the sequence number.
+     * @return the index of the slot.
+     */
+    private static int slotOf(long sequence) {
+        return (int) (sequence & (CAPACITY - 1));
+    }
+
+    /**
+     * A buffered record, with the name of the thread that logged it,
+     * which cannot be found from the drain thread.
+     */
+    private static class Event {
+
+        /**
+         * The record.
+         */
+        private final LogRecord record;
+
+        /**
+         * The name of the thread that logged the record.
+         */
+        private final String threadName;
+
+        /**
+         * Class constructor.
+         * @param record the record.
+         * @param threadName the name of the thread that logged the record.
+         */
+        Event(LogRecord record, String threadName) {
+            this.record = record;
+            this.threadName = threadName;
+        }
+    }
+
+}
@@ -7,11 +7,15 @@ import java.util.List;
 import java.util.Map;
 import java.util.Observable;
 import java.util.Observer;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import suncertify.db.CloseableDB;
 import suncertify.db.DBException;
 import suncertify.db.DuplicateKeyException;
+import suncertify.db.LockTimeoutException;
+import suncertify.db.RecordChangeListener;
 import suncertify.db.RecordNotFoundException;
+import suncertify.db.SearchPage;
 import suncertify.db.SecurityException;
 import suncertify.network.NetworkException;
 
@@ -19,27 +23,46 @@ import suncertify.network.NetworkException;
  * The <code>BusinessService</code> class is a utility
  * class used by clients.  It accesses the database via 
  * a <code>CloseableDB</code> instance, which may provide
- * a local or remote database connection.
+ * a local or remote database connection.  Observers are notified
+ * with a <code>RoomChange</code> whenever any client changes a room,
+ * and with the <code>ApplicationMode</code> after this client has
+ * attempted to book a room.
  * 
  * @author John Harding
  */
 public class BusinessService extends Observable {
     
     /**
-     * Index of the owner field in a database record.
+     * The maximum time in milliseconds to wait for a room
+     * that is being booked by another client.
      */
-    private static final int OWNER_INDEX = 6;
+    private static final long BOOKING_LOCK_TIMEOUT = 5000;
 	
     /**
      * An <code>Observer</code> instance.
      */
-	private List<Observer> observers = new ArrayList<Observer>();
+	private List<Observer> observers = new CopyOnWriteArrayList<Observer>();
 	
 	/**
 	 * Provides database connectivity.
 	 */
 	private CloseableDB dataAccess;
 	
+	/**
+	 * Notifies observers of rooms changed by any client.
+	 */
+	private RecordChangeListener changeListener = new RecordChangeListener() {
+	    @Override
+	    public void recordChanged(int recNo, String[] data) {
+	        fireRoomChangeEvent(new RoomChange(recNo, data));
+	    }
+	};
+	
+	/**
+	 * Whether observers are notified of rooms changed by any client.
+	 */
+	private boolean notifiedOfChanges;
+	
 	/**
 	 * Class constructor.
 	 * @param dataAccess a <code>CloseableDB</code>
@@ -47,6 +70,25 @@ public class BusinessService extends Observable {
 	 */
 	public BusinessService(CloseableDB dataAccess) {
 		this.dataAccess = dataAccess;
+		try {
+		    dataAccess.addRecordChangeListener(changeListener);
+		    notifiedOfChanges = true;
+		} catch (NetworkException e) {
+		    /**
+		     * The server cannot call this client back, so observers
+		     * must search again to learn of changes made by other clients.
+		     */
+		    notifiedOfChanges = false;
+		}
+	}
+	
+	/**
+	 * Indicates whether observers are notified with a 
+	 * <code>RoomChange</code> whenever any client changes a room.
+	 * @return boolean
+	 */
+	public boolean isNotifiedOfChanges() {
+	    return notifiedOfChanges;
 	}
 	
 	/**
@@ -71,6 +113,16 @@ public class BusinessService extends Observable {
         }
     }
 	
+	/**
+	 * Informs observers that a room has been changed.
+	 * @param change the <code>RoomChange</code> describing the room.
+	 */
+	private void fireRoomChangeEvent(RoomChange change) {
+	    for (Observer o: observers) {
+	        o.update(this, change);
+	    }
+	}
+	
 	/**
 	 * Searches for data matching supplied criteria.
 	 * @param criteria <code>SearchCriteria</code> instance.
@@ -84,97 +136,82 @@ public class BusinessService extends Observable {
 	public Map<Integer, Room> searchRooms(SearchCriteria criteria) {
         
         String[] searchCriteria = criteria.getCriteria();
-        int[] matchingRecordNumbers = dataAccess.find(searchCriteria);
+        /**
+         * The matching records are found and read in a single operation,
+         * which for a remote database is a single call rather than one
+         * call to find the records and another to read each of them.
+         * Records deleted after they were found are already left out.
+         */
+        Map<Integer, String[]> records = dataAccess.findRecords(searchCriteria);
         Map<Integer, Room> roomMap = new LinkedHashMap<Integer, Room>();
         int tableIndex = 0;
 
-        for (int recNo: matchingRecordNumbers) {
-            try {
-                String[] data = dataAccess.read(recNo);
-                Room room = new Room(recNo, data);
-                roomMap.put(tableIndex, room);
-                tableIndex++;
-            }
-            catch (RecordNotFoundException e) {
-                /**
-                 * RecordNotFoundException will be thrown by the DB.read(int recNo)
-                 * method if the record is marked as deleted. It is possible that
-                 * another client that uses Data.java has deleted a record number
-                 * that matched the search criteria before this method invokes the
-                 * DB.read(int recNo) method.  We don't want to display deleted
-                 * records, so the exception is caught here and the loop continues.
-                 * Only non deleted records will be passed to the Room constructor.
-                 */
-                continue;
-            }
+        for (Map.Entry<Integer, String[]> record : records.entrySet()) {
+            Room room = new Room(record.getKey(), record.getValue());
+            roomMap.put(tableIndex, room);
+            tableIndex++;
         }
 
         return roomMap;
     }   
 	
+	/**
+	 * Searches for a page of the rooms matching supplied criteria.  A
+	 * search is started from record number zero and continued from the
+	 * <code>nextRecNo</code> of each page until the last page is returned,
+	 * so that the first rooms can be shown before the search is complete.
+	 * @param criteria <code>SearchCriteria</code> instance.
+	 * @param fromRecNo the record number to start searching from.
+	 * @param pageSize the maximum number of rooms on the page.
+	 * @return a <code>RoomPage</code> of matching rooms.
+	 * @throws DBException if a database failure occurs.
+	 * @throws NetworkException if the <code>CloseableDB</code>
+	 *         instance provides a remote database connection
+	 *         and a network error occurs.
+	 */
+	public RoomPage searchRooms(SearchCriteria criteria, int fromRecNo, int pageSize) {
+	    SearchPage page = dataAccess.findPage(criteria.getCriteria(), fromRecNo, pageSize);
+	    List<Room> rooms = new ArrayList<Room>(page.getRecords().size());
+	    
+	    for (Map.Entry<Integer, String[]> record : page.getRecords().entrySet()) {
+	        rooms.add(new Room(record.getKey(), record.getValue()));
+	    }
+	    
+	    return new RoomPage(rooms, page.getNextRecNo());
+	}
+	
 	/**
 	 * Books a room.
 	 * @param room <code>Room</code> object encapsulating the data of the
 	 *        record to be updated.
 	 * @throws RecordNotFoundException if the requested room has already
 	 *         been booked.
-	 * @throws SecurityException if an attempt is made to book a 
-	 *         record with an invalid lock cookie.
+	 * @throws SecurityException if the lock on the record is lost
+	 *         before the record is updated.
 	 * @throws DBException if a database failure occurs.
      * @throws NetworkException if the <code>CloseableDB</code>
      *         instance provides a remote database connection
      *         and a network error occurs.
      * @throws RoomAlreadyBookedException if the room is already booked.
+     * @throws LockTimeoutException if the room is being booked by
+     *         another client and cannot be locked in time.
 	 */
 	public void bookRoom(Room room, String customerId) throws RecordNotFoundException,
-            SecurityException, RoomAlreadyBookedException {
+            SecurityException, RoomAlreadyBookedException, LockTimeoutException {
 
 	    int recNo = room.getRecNo();
-        long lockCookie = 0;
 
-        try {
-            lockCookie = dataAccess.lock(recNo);
-            if (alreadyBooked(recNo)) {
-                fireDataChangeEvent();
-                throw new RoomAlreadyBookedException();
-            }
-            room.setOwner(customerId);
-            String[] data = room.getData();
-            dataAccess.update(recNo, data, lockCookie);
+        /**
+         * The record is locked, checked, updated and unlocked by the
+         * database in a single operation, which for a remote database
+         * is a single call rather than one call for each step.
+         */
+        if (!dataAccess.bookRecord(recNo, customerId, BOOKING_LOCK_TIMEOUT)) {
             fireDataChangeEvent();
-        } finally {
-            try {
-                dataAccess.unlock(recNo, lockCookie);
-            } catch (Exception e) {
-                /**
-                 * Nothing of use can be conveyed to the user
-                 * if an Exception is thrown while trying to
-                 * unlock a record, so Exceptions are propagated
-                 * no further.
-                 */
-            }
+            throw new RoomAlreadyBookedException();
         }
-
-	}
-	
-	/**
-	 * Checks if a given record is already booked.
-	 * @param recNo the record number to check.
-	 * @return boolean.
-	 * @throws RecordNotFoundException if the record
-     *         does not exist in the database.
-     * @throws DBException if a database failure occurs.
-     * @throws NetworkException if the <code>CloseableDB</code>
-     *         instance provides a remote database connection
-     *         and a network error occurs.
-     */
-	private boolean alreadyBooked(int recNo) throws RecordNotFoundException {
-		String[] roomData = dataAccess.read(recNo);
-		String owner = roomData[OWNER_INDEX];
-		if (owner.equals("")) {
-			return false;
-		}
-		return true;
+        room.setOwner(customerId);
+        fireDataChangeEvent();
 	}
 	
 	/**
@@ -248,10 +285,32 @@ public class BusinessService extends Observable {
     }
 	
 	/**
-	 * Closes local database connections.
+	 * Creates several rooms in a single operation.
+	 * @param data the fields of each room to be created.
+	 * @throws DBException if a database failure occurs.
+     * @throws NetworkException if the <code>CloseableDB</code>
+     *         instance provides a remote database connection
+     *         and a network error occurs.
+	 */
+	public void createRooms(String[][] data) {
+        try {
+            dataAccess.createRecords(data);
+        } catch (DuplicateKeyException e) {
+            /**
+             * DuplicateKeyException will never be thrown.
+             */
+        }
+    }
+	
+	/**
+	 * Stops notification of changed rooms and 
+	 * closes local database connections.
 	 */
 	public void cleanUp() {
 	    try {
+	        if (notifiedOfChanges) {
+	            dataAccess.removeRecordChangeListener(changeListener);
+	        }
 	        boolean shouldClose = dataAccess.hasLocalDatabaseConnection();
 	        if (shouldClose) {
 	            dataAccess.closeDatabaseConnection();
@@ -262,6 +321,13 @@ public class BusinessService extends Observable {
              * if closing the database connection fails,
              * so this exception is propagated no further.
              */
+        } catch (NetworkException e) {
+            /**
+             * The server may already be unreachable when the
+             * application exits, in which case it deregisters
+             * this client itself, so this exception is
+             * propagated no further.
+             */
         }
 	}
 }
@@ -1,11 +1,14 @@
 package suncertify.application;
 
+import suncertify.network.RequestExecutorMode;
+
 /**
  * Instances of this class are transfer or value objects
  * used to convey configuration data. Three variables,
  * databaseLocation, hostname and port are sufficient to
  * encapsulate configuration data for all three application
- * modes.
+ * modes.  The server additionally has optional settings for
+ * the threads that execute its requests.
  *
  * @author John Harding
  */
@@ -27,6 +30,18 @@ public class Configuration {
      */
     private String port;
     
+    /**
+     * The kind of thread that the server executes requests on.
+     * Used in server mode.
+     */
+    private RequestExecutorMode requestExecutor = RequestExecutorMode.PLATFORM;
+    
+    /**
+     * The maximum number of threads that the server executes
+     * requests on, if they are bounded.  Used in server mode.
+     */
+    private int maxRequestThreads = RequestExecutorMode.DEFAULT_MAX_THREADS;
+    
     /**
      * Class constructor is private in order to restrict
      * how <code>Configuration</code> is instantiated.
@@ -77,6 +92,26 @@ public class Configuration {
         return config;
     }
     
+    /**
+     * Constructs a <code>Configuration</code> object that encapsulates
+     * server configuration data, including how requests are executed.
+     * @param databaseLocation the location of the database.
+     * @param port the port that the server was listening for
+     *        connections on.
+     * @param requestExecutor the kind of thread that the server
+     *        executes requests on.
+     * @param maxRequestThreads the maximum number of threads that the
+     *        server executes requests on, if they are bounded.
+     * @return Configuration
+     */
+    public static Configuration serverConfig(String databaseLocation, String port,
+            RequestExecutorMode requestExecutor, int maxRequestThreads) {
+        Configuration config = serverConfig(databaseLocation, port);
+        config.requestExecutor = requestExecutor;
+        config.maxRequestThreads = maxRequestThreads;
+        return config;
+    }
+    
     /**
      * Getter
      * @return databaseLocation.
@@ -125,6 +160,22 @@ public class Configuration {
         this.port = port;
     }
     
+    /**
+     * Getter.
+     * @return requestExecutor.
+     */
+    public RequestExecutorMode getRequestExecutor() {
+        return requestExecutor;
+    }
+    
+    /**
+     * Getter.
+     * @return maxRequestThreads.
+     */
+    public int getMaxRequestThreads() {
+        return maxRequestThreads;
+    }
+    
     
 
 }
@@ -11,6 +11,7 @@ import java.util.logging.Logger;
 import suncertify.db.CloseableDB;
 import suncertify.db.DBException;
 import suncertify.db.Data;
+import suncertify.network.BinaryDataProxy;
 import suncertify.network.DataProxy;
 import suncertify.network.DataRemoteAdapter;
 import suncertify.network.NetworkException;
@@ -49,7 +50,7 @@ public class DatabaseConnection {
 	 * @return a <code>DataProxy</code> instance.
 	 */
 	public static CloseableDB getRemoteConnection(String hostname, int port) {
-	    Utils.setLogLevel(log, Level.FINER);
+	    Utils.setLogLevel(log, Level.INFO);
 		CloseableDB data;
 		String url = "rmi://" + hostname + ":" + port + "/Data";
 		try {
@@ -64,4 +65,24 @@ public class DatabaseConnection {
 		} 
 		return data;
 	}
+	
+	/**
+	 * Returns an object used to connect to a remote database over
+	 * the binary protocol, in place of RMI.
+	 * @param hostname the name / ip address of the
+	 *        machine on which the database server is located.
+	 * @param port the port that the server's binary protocol
+	 *        listener is running on.
+	 * @throws NetworkException if networking errors occur. 
+	 * @return a <code>BinaryDataProxy</code> instance.
+	 */
+	public static CloseableDB getBinaryConnection(String hostname, int port) {
+	    Utils.setLogLevel(log, Level.INFO);
+	    try {
+	        return new BinaryDataProxy(hostname, port);
+	    } catch (NetworkException e) {
+	        log.throwing("DatabaseConnection", "getBinaryConnection", e);
+	        throw new NetworkException("Network error:\nCheck hostname and binary port", e.getCause());
+	    }
+	}
 }
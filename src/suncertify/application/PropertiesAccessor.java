@@ -6,6 +6,8 @@ import java.io.FileWriter;
 import java.io.IOException;
 import java.util.Properties;
 
+import suncertify.network.RequestExecutorMode;
+
 /**
  * This class handles writing configuration data to and 
  * retrieving configuration data from <code>suncertify.properties</code>.
@@ -48,7 +50,20 @@ public class PropertiesAccessor {
 	    else if (mode == ApplicationMode.SERVER) {
 	        String databaseLocation = readProperty("server.databaseLocation");
             String port = readProperty("server.port");
-            config = Configuration.serverConfig(databaseLocation, port);
+            RequestExecutorMode requestExecutor 
+                    = RequestExecutorMode.parse(readOptionalProperty("server.requestExecutor"));
+            int maxRequestThreads = RequestExecutorMode.DEFAULT_MAX_THREADS;
+            try {
+                String maxThreads = readOptionalProperty("server.maxRequestThreads");
+                if (maxThreads != null) {
+                    maxRequestThreads = Math.max(1, Integer.parseInt(maxThreads.trim()));
+                }
+            } catch (NumberFormatException e) {
+                /**
+                 * An invalid limit is ignored, like a missing one.
+                 */
+            }
+            config = Configuration.serverConfig(databaseLocation, port, requestExecutor, maxRequestThreads);
 	    }
 	    return config;
     }
@@ -81,6 +96,25 @@ public class PropertiesAccessor {
         }
     }
 	
+    /**
+     * Retrieves the optional port of the binary protocol listener from
+     * <code>suncertify.properties</code>: <code>server.binaryPort</code>, 
+     * the port the server listens on, or <code>networkClient.binaryPort</code>,
+     * the port the client connects to in place of RMI.
+     * @param mode the <code>ApplicationMode</code> that represents
+     *        the mode the application is being executed in.
+     * @return the port, or null if none is configured.
+     */
+    public static Integer getBinaryPort(ApplicationMode mode) {
+        String key = (mode == ApplicationMode.SERVER) ? "server.binaryPort" : "networkClient.binaryPort";
+        String port = readOptionalProperty(key);
+        try {
+            return (port == null) ? null : Integer.valueOf(port.trim());
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+    
     /**
      * Reads a single property from file.
      * @param propertyName the property to be read from file.
@@ -101,6 +135,20 @@ public class PropertiesAccessor {
 		return property;
 	}
 	
+    /**
+     * Reads a single property that need not be set from file.
+     * @param propertyName the property to be read from file.
+     * @return the property of interest, or null if it is not set
+     *         or cannot be read.
+     */
+	private static String readOptionalProperty(String propertyName) {
+	    try {
+	        return readProperty(propertyName);
+	    } catch (ConfigurationException e) {
+	        return null;
+	    }
+	}
+	
 	/**
 	 * Writes a single property to file.
 	 * @param key the key of the property.
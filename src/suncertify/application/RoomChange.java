@@ -0,0 +1,58 @@
+package suncertify.application;
+
+/**
+ * Describes a room that has been created, updated or deleted by
+ * any client.  Used as a transfer object when observers of
+ * <code>BusinessService</code> are notified of the change.
+ *
+ * @author John Harding
+ */
+public class RoomChange {
+
+    /**
+     * The record number of the room.
+     */
+    private int recNo;
+
+    /**
+     * The room data, or null if the room has been deleted.
+     */
+    private String[] data;
+
+    /**
+     * Class constructor.
+     * @param recNo the database record number.
+     * @param data the record data, or null if the
+     *        record has been deleted.
+     */
+    public RoomChange(int recNo, String[] data) {
+        this.recNo = recNo;
+        this.data = data;
+    }
+
+    /**
+     * Getter.
+     * @return the record number.
+     */
+    public int getRecNo() {
+        return recNo;
+    }
+
+    /**
+     * Getter.
+     * @return the record data, or null if the
+     *         record has been deleted.
+     */
+    public String[] getData() {
+        return data;
+    }
+
+    /**
+     * Indicates whether the room has been deleted.
+     * @return boolean
+     */
+    public boolean isDeleted() {
+        return data == null;
+    }
+
+}
@@ -0,0 +1,62 @@
+package suncertify.application;
+
+import java.util.List;
+
+import suncertify.db.SearchPage;
+
+/**
+ * One page of the rooms that match a search.  Used as a transfer
+ * object.  The search is continued by passing <code>nextRecNo</code>
+ * to <code>BusinessService.searchRooms</code> until the last page
+ * is returned.
+ *
+ * @author John Harding
+ */
+public class RoomPage {
+
+    /**
+     * The rooms on the page, in record number order.
+     */
+    private List<Room> rooms;
+
+    /**
+     * The record number to continue the search from.
+     */
+    private int nextRecNo;
+
+    /**
+     * Class constructor.
+     * @param rooms the rooms on the page.
+     * @param nextRecNo the record number to continue the search
+     *        from, or <code>SearchPage.LAST_PAGE</code>.
+     */
+    public RoomPage(List<Room> rooms, int nextRecNo) {
+        this.rooms = rooms;
+        this.nextRecNo = nextRecNo;
+    }
+
+    /**
+     * Getter.
+     * @return the rooms on the page.
+     */
+    public List<Room> getRooms() {
+        return rooms;
+    }
+
+    /**
+     * Getter.
+     * @return the record number to continue the search from.
+     */
+    public int getNextRecNo() {
+        return nextRecNo;
+    }
+
+    /**
+     * Indicates whether this is the last page of the search.
+     * @return boolean
+     */
+    public boolean isLastPage() {
+        return nextRecNo == SearchPage.LAST_PAGE;
+    }
+
+}
@@ -1,6 +1,6 @@
 package suncertify.application;
 
-import java.util.logging.ConsoleHandler;
+import java.util.Arrays;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -10,16 +10,61 @@ import java.util.logging.Logger;
  * @author John Harding
  */
 public class Utils {
-    
-    public static void setLogLevel(Logger log, Level level) {
+
+    /**
+     * The system property that, if set to the name of a <code>Level</code>,
+     * overrides the levels that classes ask for, such as "FINE" to log
+     * every database operation.
+     */
+    public static final String LOG_LEVEL_PROPERTY = "suncertify.logLevel";
+
+    /**
+     * The handler shared by every logger configured here, created
+     * when the first logger is configured.
+     */
+    private static AsyncLogHandler handler;
+
+    /**
+     * Configures a logger to log at a level through the shared
+     * <code>AsyncLogHandler</code>, unless the level is overridden by
+     * <code>LOG_LEVEL_PROPERTY</code>.  A logger is configured once only,
+     * so a class may call this from its constructor, and a level set on
+     * the logger afterwards is kept.
+     * @param log the logger.
+     * @param level the level to log at.
+     */
+    public static synchronized void setLogLevel(Logger log, Level level) {
+        if (handler == null) {
+            handler = new AsyncLogHandler();
+            handler.setLevel(Level.ALL);
+        }
+        if (Arrays.asList(log.getHandlers()).contains(handler)) {
+            return;
+        }
         /**
          * No SecurityManager exists so java.lang.SecurityException
          * will not be thrown.
          */
         log.setUseParentHandlers(false);
-        log.setLevel(level);
-        ConsoleHandler handler = new ConsoleHandler();
-        handler.setLevel(level);
+        log.setLevel(configuredLevel(level));
         log.addHandler(handler);
     }
+
+    /**
+     * Returns the level set by <code>LOG_LEVEL_PROPERTY</code>, if it is
+     * set to the name of a level, otherwise the level asked for.
+     * @param level the level asked for.
+     * @return the level to log at.
+     */
+    private static Level configuredLevel(Level level) {
+        String name = System.getProperty(LOG_LEVEL_PROPERTY);
+        if (name != null) {
+            try {
+                return Level.parse(name.trim().toUpperCase());
+            } catch (IllegalArgumentException e) {
+                return level;
+            }
+        }
+        return level;
+    }
 }
@@ -1,13 +1,22 @@
 package suncertify.db;
 
 import java.io.IOException;
+import java.util.Map;
 
 /**
- * This interface extends the supplied <code>DB</code>
- * interface in order to add a <code>closeDatabaseConnection</code>
- * method to <code>Data</code>.  This method is used 
- * to close the database connection just before the
- * application exits.
+ * Extends the supplied <code>DB</code> interface with the operations
+ * that the application needs beyond it:
+ * <ul>
+ * <li>closing the database connection just before the application exits.</li>
+ * <li>locking a record without waiting indefinitely.</li>
+ * <li>booking a record, and finding records with their fields, in a
+ * single operation.</li>
+ * <li>finding records a page at a time.</li>
+ * <li>subscribing to notification of changed records.</li>
+ * <li>reading records with their versions, so that copies of
+ * records can be validated.</li>
+ * <li>reading or creating several records in a single operation.</li>
+ * </ul>
  *
  * @author John Harding
  */
@@ -27,4 +36,147 @@ public interface CloseableDB extends DB {
      */
     public boolean hasLocalDatabaseConnection();
     
+    /**
+     * Locks a record if it is not already locked by a different
+     * client, without waiting.
+     * 
+     * @param recNo the unique identifier of the record to lock.
+     * @return long cookie a unique token used to identify the owner
+     *          of the lock on the record.
+     * @throws RecordNotFoundException if the record does not exist 
+     *         in the database.
+     * @throws LockTimeoutException if the record is locked by a
+     *         different client.
+     */
+    public long tryLock(int recNo) throws RecordNotFoundException, LockTimeoutException;
+    
+    /**
+     * Locks a record, waiting no longer than the specified time
+     * if the record is already locked by a different client.
+     * 
+     * @param recNo the unique identifier of the record to lock.
+     * @param timeoutMillis the maximum time to wait in milliseconds.
+     * @return long cookie a unique token used to identify the owner
+     *          of the lock on the record.
+     * @throws RecordNotFoundException if the record does not exist 
+     *         in the database or an <code>InterruptedException</code>
+     *         occurs when trying to lock the record.
+     * @throws LockTimeoutException if the record is still locked by
+     *         a different client when the timeout elapses.
+     */
+    public long tryLock(int recNo, long timeoutMillis) 
+            throws RecordNotFoundException, LockTimeoutException;
+    
+    /**
+     * Books a record for an owner, provided that it is not already
+     * booked.  The record is locked, its owner checked and the record
+     * updated and unlocked in a single operation.
+     * 
+     * @param recNo the unique identifier of the record to book.
+     * @param owner the owner that the record is booked for.
+     * @param timeoutMillis the maximum time in milliseconds to wait
+     *        if the record is locked by a different client.
+     * @return true if the record was booked, false if it
+     *         is already booked.
+     * @throws RecordNotFoundException if the record does not exist 
+     *         in the database.
+     * @throws SecurityException if the lock on the record is lost
+     *         before it is updated.
+     * @throws LockTimeoutException if the record is still locked by
+     *         a different client when the timeout elapses.
+     */
+    public boolean bookRecord(int recNo, String owner, long timeoutMillis) 
+            throws RecordNotFoundException, SecurityException, LockTimeoutException;
+    
+    /**
+     * Finds the records that match the specified criteria, as
+     * <code>find</code> does, and reads them in the same operation.
+     * Records deleted before they can be read are left out.
+     * 
+     * @param criteria a String array representing search criteria.
+     * @return a map of the numbers of the matching records to their 
+     *         fields, in record number order.
+     */
+    public Map<Integer, String[]> findRecords(String[] criteria);
+    
+    /**
+     * Finds a page of the records that match the specified criteria,
+     * as <code>findRecords</code> does, starting from the specified 
+     * record number.  A search is started from record number zero and
+     * continued from the <code>nextRecNo</code> of each page until the
+     * last page is returned.
+     * 
+     * @param criteria a String array representing search criteria.
+     * @param fromRecNo the record number to start searching from.
+     * @param pageSize the maximum number of records on the page.
+     * @return a <code>SearchPage</code> of matching records.
+     * @throws IllegalArgumentException if <code>pageSize</code>
+     *         is less than one.
+     */
+    public SearchPage findPage(String[] criteria, int fromRecNo, int pageSize);
+    
+    /**
+     * Registers a listener to be notified of every record that is
+     * created, updated or deleted, by this or any other client.
+     * 
+     * @param listener the listener to register.
+     */
+    public void addRecordChangeListener(RecordChangeListener listener);
+    
+    /**
+     * Deregisters a listener registered with 
+     * <code>addRecordChangeListener</code>.
+     * 
+     * @param listener the listener to deregister.
+     */
+    public void removeRecordChangeListener(RecordChangeListener listener);
+    
+    /**
+     * Reads a record together with its version.
+     * 
+     * @param recNo the unique identifier of the record to read.
+     * @return the fields and version of the record.
+     * @throws RecordNotFoundException if the record does not exist
+     *         in the database.
+     */
+    public VersionedRecord readVersioned(int recNo) throws RecordNotFoundException;
+    
+    /**
+     * Reads those of the specified records whose version is no longer
+     * the specified version.  Records that have been deleted are 
+     * returned with null fields.
+     * 
+     * @param recNos the numbers of the records to check.
+     * @param versions the version of each record in <code>recNos</code>
+     *        that the caller holds.
+     * @return a map of the numbers of the records that have changed
+     *         to their current fields and version.
+     * @throws IllegalArgumentException if <code>recNos</code> and
+     *         <code>versions</code> differ in length.
+     */
+    public Map<Integer, VersionedRecord> readIfModified(int[] recNos, long[] versions);
+    
+    /**
+     * Reads several records in a single operation.  Records that do
+     * not exist or have been deleted are left out, rather than causing
+     * a <code>RecordNotFoundException</code>.
+     * 
+     * @param recNos the unique identifiers of the records to read.
+     * @return a map of the numbers of the records read to their
+     *         fields, in ascending order of record number.
+     */
+    public Map<Integer, String[]> readRecords(int[] recNos);
+    
+    /**
+     * Creates several records in a single operation, possibly reusing
+     * deleted entries, as <code>create</code> does for each record.
+     * 
+     * @param data the fields of each record to be created.
+     * @return the unique identifiers of the new records, in
+     *         the order of <code>data</code>.
+     * @throws DuplicateKeyException if a record with the same key
+     *         already exists in the database.
+     */
+    public int[] createRecords(String[][] data) throws DuplicateKeyException;
+    
 }
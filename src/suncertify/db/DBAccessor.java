@@ -1,22 +1,28 @@
 package suncertify.db;
 
 import java.io.File;
-import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.io.RandomAccessFile;
 import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 import suncertify.application.Utils;
 
 /**
  * The <code>DBAccessor</code> class provides direct access to the underlying
- * database file. It uses a RandomAccessFile instance to read from and write
- * to the file. The constructor and public methods of this class
+ * database file. It uses a <code>RecordStorage</code> instance, chosen by
+ * <code>StorageMode</code>, to read from and write to the file. The constructor and public methods of this class
  * (excluding getters) throw <code>DBException</code> which extends
  * <code>RunTimeException</code>. This exception wraps checked
  * Exceptions such as <code>FileNotFoundException</code>, <code>IOException</code>
@@ -33,6 +39,16 @@ public class DBAccessor {
      */
     private static final int NUMBER_OF_FIELDS_IN_RECORD = 7;
     
+    /**
+     * The index of the name field in a record.
+     */
+    private static final int NAME_INDEX = 0;
+    
+    /**
+     * The index of the location field in a record.
+     */
+    private static final int LOCATION_INDEX = 1;
+    
     /**
      * The length in bytes of the name field.
      */
@@ -81,11 +97,33 @@ public class DBAccessor {
      */
     private static final int RECORD_DATA_SECTION_OFFSET = 1;
     
+    /**
+     * The length in bytes of the data section of a record.
+     */
+    public static final int RECORD_DATA_LENGTH = RECORD_LENGTH - RECORD_DATA_SECTION_OFFSET;
+    
     /**
      * The number of bytes in the database file before the data section begins.
      */
     private static final int FILE_DATA_SECTION_OFFSET = 56;
     
+    /**
+     * The number of records in the file at or above which
+     * <code>find</code> scans the file in parallel.
+     */
+    private static final int PARALLEL_FIND_THRESHOLD = 16384;
+    
+    /**
+     * The number of records scanned by each task of a parallel find.
+     */
+    private static final int PARALLEL_FIND_SEGMENT = 4096;
+    
+    /**
+     * The pool that runs the tasks of parallel finds.  Its
+     * worker threads are daemon threads, one per processor.
+     */
+    private static final ForkJoinPool FIND_POOL = new ForkJoinPool();
+    
     /**
      * The value that denotes a deleted
      * record in the database file.
@@ -108,11 +146,32 @@ public class DBAccessor {
     private static String databaseLocation;
     
     /**
-     * The RandomAccessfile instance <code>database</code> 
+     * The RecordStorage instance <code>database</code> 
      * is used to directly read from and write to the 
      * database file.
      */
-    private RandomAccessFile database = null;
+    private RecordStorage database = null;
+    
+    /**
+     * Secondary indexes on the name and location fields, 
+     * consulted by <code>find</code> when criteria are
+     * supplied for those fields.
+     */
+    private final FieldIndex[] indexes = {new FieldIndex(NAME_INDEX), new FieldIndex(LOCATION_INDEX)};
+    
+    /**
+     * The numbers of the records that are marked as deleted
+     * and so can be reused by <code>createRecord</code>.  Access
+     * is synchronized on the set itself.
+     */
+    private final TreeSet<Integer> freeSlots = new TreeSet<Integer>();
+    
+    /**
+     * The number of records that are not marked as deleted, kept
+     * as records are created and deleted so that it can be read
+     * without scanning the file.
+     */
+    private final AtomicInteger recordCount = new AtomicInteger();
     
     /**
      * Logger instance for DBAccessor.java.
@@ -121,13 +180,26 @@ public class DBAccessor {
     
     /**
      * Class constructor. All instances of the class share access
-     * to the same database file.
+     * to the same database file, which is accessed using 
+     * <code>StorageMode.FILE</code>.
      * @param dbLocation the path to the database file.
-     * @throws DBException if the <code>RandomAccessFile<code>
+     * @throws DBException if the <code>RecordStorage<code>
      *         instance cannot be created.
      */
     public DBAccessor(String dbLocation) {
-        Utils.setLogLevel(log, Level.FINER);
+        this(dbLocation, StorageMode.FILE);
+    }
+    
+    /**
+     * Class constructor. All instances of the class share access
+     * to the same database file.
+     * @param dbLocation the path to the database file.
+     * @param storageMode how the database file is to be accessed.
+     * @throws DBException if the <code>RecordStorage<code>
+     *         instance cannot be created.
+     */
+    public DBAccessor(String dbLocation, StorageMode storageMode) {
+        Utils.setLogLevel(log, Level.INFO);
         if (database == null) {
             try {
                 File file = new File(dbLocation);
@@ -136,16 +208,17 @@ public class DBAccessor {
                  * the file on disk if it doesn't exist.
                  */
                 if (file.exists() && !file.isDirectory()) {
-                    database = new RandomAccessFile(file, "rw");
+                    database = openStorage(file, storageMode);
                 }
                 else {
                     throw new DBException("Could not open " + dbLocation);
                 }
-            } catch (FileNotFoundException e) {
+            } catch (IOException e) {
                 log.throwing("DBAccessor.java", "Constructor", e);
                 throw new DBException("Could not open " + dbLocation, e);
             }
             databaseLocation = dbLocation;
+            scanFile();
         }
         else if (dbLocation != databaseLocation) {
             log.warning("Ignored database location " + dbLocation +
@@ -153,6 +226,48 @@ public class DBAccessor {
         }
     }
     
+    /**
+     * Reads every record in the database file, adding records to
+     * the secondary indexes and the numbers of deleted records to
+     * the free slots.
+     * @throws DBException if the database file cannot be read.
+     */
+    private void scanFile() {
+        try {
+            long fileLength = database.length();
+            for (long filePosition = FILE_DATA_SECTION_OFFSET; filePosition < fileLength; 
+                    filePosition += RECORD_LENGTH) {
+                byte[] record = retrieveRecord(filePosition);
+                int recNo = calculateRecordNumber(filePosition);
+                if (isDeletedRecord(record)) {
+                    freeSlots.add(recNo);
+                }
+                else {
+                    addToIndexes(recNo, record);
+                    recordCount.incrementAndGet();
+                }
+            }
+        } catch (IOException e) {
+            log.throwing("DBAccessor.java", "scanFile", e);
+            throw new DBException("Could not retrieve records", e);
+        }
+    }
+    
+    /**
+     * Creates the <code>RecordStorage</code> that corresponds
+     * to the specified <code>StorageMode</code>.
+     * @param file the database file.
+     * @param storageMode how the database file is to be accessed.
+     * @return the <code>RecordStorage</code> for the file.
+     * @throws IOException if the file cannot be opened.
+     */
+    private RecordStorage openStorage(File file, StorageMode storageMode) throws IOException {
+        if (storageMode == StorageMode.MAPPED) {
+            return new MappedRecordStorage(file);
+        }
+        return new FileRecordStorage(file);
+    }
+    
     /**
      * Reads a record from the database file.
      * @param recNo the record number to retrieve.
@@ -188,6 +303,41 @@ public class DBAccessor {
         return result;
     }
     
+    /**
+     * Reads several records in a single sweep through the database file,
+     * in ascending order of record number whatever the order requested.
+     * Records that do not exist, as determined by <code>recordExists</code>,
+     * are left out.
+     * @param recNos the numbers of the records to read.
+     * @return a map of the numbers of the records read to their
+     *         fields, in ascending order of record number.
+     * @throws DBException if an IOException is thrown 
+     *         when attempting to read from the database file.
+     */
+    public Map<Integer, String[]> readRecords(int[] recNos) {
+        int[] sortedRecNos = recNos.clone();
+        Arrays.sort(sortedRecNos);
+        Map<Integer, String[]> records = new LinkedHashMap<Integer, String[]>();
+        byte[] record = new byte[RECORD_LENGTH];
+        
+        try {
+            for (int recNo : sortedRecNos) {
+                if (records.containsKey(recNo) 
+                        || !validFilePosition(calculateFilePosition(recNo))) {
+                    continue;
+                }
+                database.read(calculateFilePosition(recNo), record);
+                if (!isDeletedRecord(record)) {
+                    records.put(recNo, recordToStringArray(record));
+                }
+            }
+        } catch (IOException e) {
+            log.throwing("DBAccessor.java", "readRecords", e);
+            throw new DBException("Could not retrieve records", e);
+        }
+        return records;
+    }
+    
     /**
      * Retrieves a record from a specified position
      * in the file.
@@ -199,12 +349,7 @@ public class DBAccessor {
      */
     private byte[] retrieveRecord(long position) throws IOException {
     	final byte[] record = new byte[RECORD_LENGTH];
-        
-        synchronized (database) {
-            database.seek(position);
-            database.readFully(record);
-        }
-        
+        database.read(position, record);
         return record;
     }
     
@@ -217,18 +362,18 @@ public class DBAccessor {
      * 		   trying to write to the database file.
      */
     public void updateRecord(int recNo, String[] data) {
-        log.info("Updating record number " + recNo);
+        if (log.isLoggable(Level.FINE)) {
+            log.fine("Updating record number " + recNo);
+        }
         final long position = calculateFilePosition(recNo);
         byte[] record = stringArrayToRecord(data);
         
-        synchronized (database) {
-            try {
-                database.seek(position);
-                database.write(record);
-            } catch (IOException e) {
-                log.throwing("DBAccessor.java", "updateRecord", e);
-                throw new DBException("Could not update record", e);
-            }
+        try {
+            database.write(position, record);
+            addToIndexes(recNo, record);
+        } catch (IOException e) {
+            log.throwing("DBAccessor.java", "updateRecord", e);
+            throw new DBException("Could not update record", e);
         }
     }
     
@@ -241,22 +386,36 @@ public class DBAccessor {
      */
     public void deleteRecord(int recNo) {
         long position = calculateFilePosition(recNo);
-        synchronized (database) {
-            try {
-                database.seek(position);
-                database.writeByte(DELETED_FLAG);
-            } catch (IOException e) {
-                log.throwing("DBAccessor.java", "deleteRecord", e);
-                throw new DBException("Could not delete record", e);
-            }
+        /**
+         * Removed from the indexes first, as once the record is marked 
+         * as deleted createRecord may reuse its number.
+         */
+        for (FieldIndex index : indexes) {
+            index.remove(recNo);
+        }
+        try {
+            database.writeByte(position, DELETED_FLAG);
+        } catch (IOException e) {
+            log.throwing("DBAccessor.java", "deleteRecord", e);
+            throw new DBException("Could not delete record", e);
+        }
+        recordCount.decrementAndGet();
+        synchronized (freeSlots) {
+            freeSlots.add(recNo);
+        }
+        if (log.isLoggable(Level.FINE)) {
+            log.fine("Deleted record number " + recNo);
         }
-        log.info("Deleted record number " + recNo);
     }
     
     
     /**
      * Searches the database file for records whose fields match
-     * the supplied criteria. 
+     * the supplied criteria.  If criteria are supplied for the name
+     * or location fields, only the records found in the secondary indexes
+     * for those fields are read from the file.  Otherwise every record is read,
+     * in parallel if the file holds at least <code>PARALLEL_FIND_THRESHOLD</code>
+     * records.
      * @param criteria the criteria for which to search.
      * @return <code>int[]</code> the record numbers that match the
      *         criteria.
@@ -265,34 +424,265 @@ public class DBAccessor {
      */
     public int[] find(String[] criteria) {
         ArrayList<Integer> matches = new ArrayList<Integer>();
-        long filePosition = FILE_DATA_SECTION_OFFSET;
+        RecordMatcher matcher = newMatcher(criteria);
+        int[] candidates = indexedCandidates(criteria);
+        /**
+         * A single buffer is reused for every record read and records
+         * are matched as raw bytes, so that no objects are created
+         * for records that do not match.
+         */
+        byte[] record = new byte[RECORD_LENGTH];
+        ByteBuffer buffer = ByteBuffer.wrap(record);
         
         try {
-			while (filePosition < database.length()) {
-			    byte[] record = retrieveRecord(filePosition);
-			    if (isDeletedRecord(record)) {
-			        log.info("Found deleted record at position " + filePosition);
-		            filePosition += RECORD_LENGTH;
-			        continue;
-			    }
-			    else {
-			        String[] data = recordToStringArray(record);
-			        if (matchRecord(data, criteria)) {
-			            int recNo = calculateRecordNumber(filePosition);
-			            matches.add(recNo);
-			        }
-		            filePosition += RECORD_LENGTH;
-			    }
-			}
+            if (candidates != null) {
+                for (int recNo : candidates) {
+                    buffer.clear();
+                    database.read(calculateFilePosition(recNo), buffer);
+                    if (!isDeletedRecord(record) && matcher.matches(record)) {
+                        matches.add(recNo);
+                    }
+                }
+            }
+            else {
+                int recordCount = calculateRecordNumber(database.length()) - 1;
+                if (recordCount >= PARALLEL_FIND_THRESHOLD) {
+                    matches = FIND_POOL.invoke(new FindTask(matcher, 1, recordCount + 1));
+                }
+                else {
+                    scanRecords(matcher, 1, recordCount + 1, record, matches);
+                }
+            }
 		} catch (IOException e) {
 		    log.throwing("DBAccessor.java", "find", e);
 			throw new DBException("Could not retrieve records", e);
 		}
         int[] result = arrayListToArray(matches);
-        log.info("Matched " + result.length + " records");
+        if (log.isLoggable(Level.FINE)) {
+            log.fine("Matched " + result.length + " records");
+        }
         return result;
     }
     
+    /**
+     * Returns a page of the records that match the supplied criteria,
+     * starting from the specified record number.  Records are matched
+     * in the same way as <code>find</code>, but the search stops as soon
+     * as the page is full and the next matching record has been found,
+     * so only as much of the file is read as the page requires.
+     * @param criteria the criteria for which to search.
+     * @param fromRecNo the record number to start searching from, which
+     *        is the <code>nextRecNo</code> of the previous page.
+     * @param pageSize the maximum number of records on the page.
+     * @return a <code>SearchPage</code> of matching records.
+     * @throws IllegalArgumentException if <code>pageSize</code>
+     *         is less than one.
+     * @throws DBException if an IOException is thrown 
+     *         when attempting to read from the database file.
+     */
+    public SearchPage findPage(String[] criteria, int fromRecNo, int pageSize) {
+        if (pageSize < 1) {
+            throw new IllegalArgumentException("Page size must be at least one: " + pageSize);
+        }
+        Map<Integer, String[]> records = new LinkedHashMap<Integer, String[]>();
+        RecordMatcher matcher = newMatcher(criteria);
+        if (!matcher.canMatch()) {
+            return new SearchPage(records, SearchPage.LAST_PAGE);
+        }
+        int[] candidates = indexedCandidates(criteria);
+        byte[] record = new byte[RECORD_LENGTH];
+        ByteBuffer buffer = ByteBuffer.wrap(record);
+        
+        try {
+            if (candidates != null) {
+                for (int recNo : candidates) {
+                    if (recNo >= fromRecNo && matchesRecord(recNo, matcher, buffer)) {
+                        if (records.size() == pageSize) {
+                            return new SearchPage(records, recNo);
+                        }
+                        records.put(recNo, recordToStringArray(record));
+                    }
+                }
+            }
+            else {
+                int recordCount = calculateRecordNumber(database.length()) - 1;
+                for (int recNo = Math.max(fromRecNo, 1); recNo <= recordCount; recNo++) {
+                    if (matchesRecord(recNo, matcher, buffer)) {
+                        if (records.size() == pageSize) {
+                            return new SearchPage(records, recNo);
+                        }
+                        records.put(recNo, recordToStringArray(record));
+                    }
+                }
+            }
+        } catch (IOException e) {
+            log.throwing("DBAccessor.java", "findPage", e);
+            throw new DBException("Could not retrieve records", e);
+        }
+        return new SearchPage(records, SearchPage.LAST_PAGE);
+    }
+    
+    /**
+     * Reads a record into a buffer and determines whether
+     * it is not marked as deleted and matches the criteria.
+     * @param recNo the number of the record to read.
+     * @param matcher the matcher built from the search criteria.
+     * @param buffer a buffer wrapping the array into which the record is read.
+     * @return boolean
+     * @throws IOException if the record cannot be read.
+     */
+    private boolean matchesRecord(int recNo, RecordMatcher matcher, ByteBuffer buffer) 
+            throws IOException {
+        
+        buffer.clear();
+        database.read(calculateFilePosition(recNo), buffer);
+        byte[] record = buffer.array();
+        return !isDeletedRecord(record) && matcher.matches(record);
+    }
+    
+    /**
+     * Reads a range of records, adding the numbers of those
+     * that match to a list.
+     * @param matcher the matcher built from the search criteria.
+     * @param firstRecNo the number of the first record to read.
+     * @param endRecNo the number after that of the last record to read.
+     * @param record a buffer into which each record is read.
+     * @param matches the list to which matching record numbers are added.
+     * @throws IOException if the records cannot be read.
+     */
+    private void scanRecords(RecordMatcher matcher, int firstRecNo, int endRecNo, 
+            byte[] record, ArrayList<Integer> matches) throws IOException {
+        
+        ByteBuffer buffer = ByteBuffer.wrap(record);
+        boolean logDeleted = log.isLoggable(Level.FINEST);
+        for (int recNo = firstRecNo; recNo < endRecNo; recNo++) {
+            long filePosition = calculateFilePosition(recNo);
+            buffer.clear();
+            database.read(filePosition, buffer);
+            if (isDeletedRecord(record)) {
+                if (logDeleted) {
+                    log.finest("Found deleted record at position " + filePosition);
+                }
+            }
+            else if (matcher.matches(record)) {
+                matches.add(recNo);
+            }
+        }
+    }
+    
+    /**
+     * Task that scans a range of records for a parallel find.  Ranges
+     * larger than <code>PARALLEL_FIND_SEGMENT</code> are split in two, 
+     * and the matches of the lower half are placed before those of the
+     * upper half, so matches are returned in file order.
+     */
+    private class FindTask extends RecursiveTask<ArrayList<Integer>> {
+        
+        /**
+         * The SUID.
+         */
+        private static final long serialVersionUID = 1331L;
+        
+        /**
+         * The matcher built from the search criteria.
+         */
+        private final RecordMatcher matcher;
+        
+        /**
+         * The number of the first record to scan.
+         */
+        private final int firstRecNo;
+        
+        /**
+         * The number after that of the last record to scan.
+         */
+        private final int endRecNo;
+        
+        /**
+         * Class constructor.
+         * @param matcher the matcher built from the search criteria.
+         * @param firstRecNo the number of the first record to scan.
+         * @param endRecNo the number after that of the last record to scan.
+         */
+        FindTask(RecordMatcher matcher, int firstRecNo, int endRecNo) {
+            this.matcher = matcher;
+            this.firstRecNo = firstRecNo;
+            this.endRecNo = endRecNo;
+        }
+        
+        /**
+         * {@inheritDoc}
+         * @throws DBException if the records cannot be read.
+         */
+        @Override
+        protected ArrayList<Integer> compute() {
+            if (endRecNo - firstRecNo <= PARALLEL_FIND_SEGMENT) {
+                ArrayList<Integer> matches = new ArrayList<Integer>();
+                try {
+                    scanRecords(matcher, firstRecNo, endRecNo, new byte[RECORD_LENGTH], matches);
+                } catch (IOException e) {
+                    throw new DBException("Could not retrieve records", e);
+                }
+                return matches;
+            }
+            int middle = firstRecNo + (endRecNo - firstRecNo) / 2;
+            FindTask lower = new FindTask(matcher, firstRecNo, middle);
+            FindTask upper = new FindTask(matcher, middle, endRecNo);
+            lower.fork();
+            ArrayList<Integer> upperMatches = upper.compute();
+            ArrayList<Integer> matches = lower.join();
+            matches.addAll(upperMatches);
+            return matches;
+        }
+    }
+    
+    /**
+     * Looks up the records that may match the supplied criteria 
+     * in the secondary indexes.  Empty criteria match every record
+     * and so are not looked up.
+     * @param criteria the criteria for which to search.
+     * @return the numbers of the records, in ascending order, whose 
+     *         indexed fields match the criteria or null if no indexed 
+     *         field has non-empty criteria.
+     */
+    int[] indexedCandidates(String[] criteria) {
+        if (criteria.length != NUMBER_OF_FIELDS_IN_RECORD) {
+            return null;
+        }
+        SortedSet<Integer> candidates = null;
+        for (FieldIndex index : indexes) {
+            String prefix = criteria[index.getField()];
+            if (prefix != null && prefix.length() > 0) {
+                SortedSet<Integer> matches = index.lookup(prefix);
+                if (candidates == null) {
+                    candidates = matches;
+                }
+                else {
+                    candidates.retainAll(matches);
+                }
+            }
+        }
+        if (candidates == null) {
+            return null;
+        }
+        return arrayListToArray(new ArrayList<Integer>(candidates));
+    }
+    
+    /**
+     * Adds a record to the secondary indexes, replacing 
+     * any previous entries for the record.
+     * @param recNo the record number.
+     * @param record the bytes that constitute the record.
+     * @throws UnsupportedEncodingException if the record
+     *         cannot be decoded.
+     */
+    private void addToIndexes(int recNo, byte[] record) throws UnsupportedEncodingException {
+        String[] data = recordToStringArray(record);
+        for (FieldIndex index : indexes) {
+            index.put(recNo, data);
+        }
+    }
+    
     /**
      * Determines whether a record is markes as deleted.
      * @param record the byte array that constitutes the record.
@@ -303,48 +693,55 @@ public class DBAccessor {
     }
     
     /**
-     * Attempts to match a record's fields with supplied criteria.
-     * If the criteria String matches the beginning of the record field, 
-     * a match in that field is recorded.  For a record to match the criteria, 
-     * criteria[n] must match the beginning of data[n] 
-     * for all non-null criteria[n].
-     * @param data array containing the fields of a record.
-     * @param criteria array containing the query criteria
-     * 		  for each element in the record field array.  An attempt is made
-     * 		  to match the beginning of <code>data[n]</code> 
-     * 		  with <code>criteria[n]</code>.
-     * @return <code>boolean</code> indicating a match or not.
+     * Creates a <code>RecordMatcher</code> for the supplied criteria.
+     * @param criteria the criteria for which to search.
+     * @return a <code>RecordMatcher</code>.
      */
-    private boolean matchRecord(String[] data, String[] criteria) {
-        
-        int nullCriteria = 0;
-        int matches = 0;
+    RecordMatcher newMatcher(String[] criteria) {
+        return new RecordMatcher(criteria, FIELD_LENGTHS_ARRAY, RECORD_DATA_SECTION_OFFSET);
+    }
+    
+    /**
+     * Reads every record that is not marked as deleted in a single
+     * pass through the database file.
+     * @return a map of record numbers to the fields of the record,
+     *         in file order.
+     * @throws DBException if an IOException is thrown 
+     *         when attempting to read from the database file.
+     */
+    public Map<Integer, String[]> readAllRecords() {
+        Map<Integer, String[]> records = new LinkedHashMap<Integer, String[]>();
+        long filePosition = FILE_DATA_SECTION_OFFSET;
         
-        for (int i = 0; i < criteria.length; i++) {
-            String query = criteria[i];
-            String field = data[i];
-            if (query == null) {
-                nullCriteria++;
-                continue;
-            }
-            else {
-                String escapedQuery = Pattern.quote(query);
-                // Pattern.CASE_INSENSITIVE assumes US-ASCII
-                Pattern pattern = Pattern.compile(escapedQuery, Pattern.CASE_INSENSITIVE);
-                Matcher matcher = pattern.matcher(field);
-                if (matcher.lookingAt()) {
-                    matches++;
+        try {
+            while (filePosition < database.length()) {
+                byte[] record = retrieveRecord(filePosition);
+                if (!isDeletedRecord(record)) {
+                    records.put(calculateRecordNumber(filePosition), recordToStringArray(record));
                 }
+                filePosition += RECORD_LENGTH;
             }
+        } catch (IOException e) {
+            log.throwing("DBAccessor.java", "readAllRecords", e);
+            throw new DBException("Could not retrieve records", e);
         }
-        
-        int fieldsToMatch = NUMBER_OF_FIELDS_IN_RECORD - nullCriteria;
-        
-        if (matches == fieldsToMatch && nullCriteria != NUMBER_OF_FIELDS_IN_RECORD) {
-            return true;
+        return records;
+    }
+    
+    /**
+     * Returns the fields of a record as they will be read back
+     * after being written to the database file.
+     * @param data <code>String</code> array containing the
+     *        fields of a record.
+     * @return the fields as stored in the database file.
+     * @throws DBException if the stored fields cannot be decoded.
+     */
+    String[] storedForm(String[] data) {
+        try {
+            return recordToStringArray(stringArrayToRecord(data));
+        } catch (UnsupportedEncodingException e) {
+            throw new DBException("Could not decode data", e);
         }
-        
-        return false;
     }
     
     /**
@@ -362,7 +759,13 @@ public class DBAccessor {
     }
     
     /**
-     * Creates a new record.
+     * Creates a new record, reusing the lowest numbered deleted record
+     * if there is one.  Record creation synchronizes on 
+     * <code>freeSlots</code> until the record is written, so that two
+     * threads cannot be given the same free position in the file.  Other 
+     * operations rely on <code>RecordStorage</code> for thread safety
+     * and on <code>LockManager</code> cookies for exclusive access to
+     * a record.
      * @param data <code>String</code> array containing the 
      *        fields of the record to be created.
      * @return the number of the newly created record.
@@ -372,45 +775,101 @@ public class DBAccessor {
     public int createRecord(String[] data) {
         byte[] record = stringArrayToRecord(data);
         int recordNumber = 0;
-        synchronized (database) {
+        synchronized (freeSlots) {
+            Integer freeSlot = freeSlots.pollFirst();
             try {
-                long position = firstAvailablePosition();
+                long position = freeSlot != null ? calculateFilePosition(freeSlot) : database.length();
                 recordNumber = calculateRecordNumber(position);
-                database.seek(position);
-                database.write(record);
+                database.write(position, record);
+                addToIndexes(recordNumber, record);
+                recordCount.incrementAndGet();
             } catch (IOException e) {
+                if (freeSlot != null) {
+                    freeSlots.add(freeSlot);
+                }
                 log.throwing("DBAccessor.java", "createRecord", e);
                 throw new DBException("Could not create record", e);
             }
         }
-        log.info("Created new record with number: " + recordNumber);
+        if (log.isLoggable(Level.FINE)) {
+            log.fine("Created new record with number: " + recordNumber);
+        }
         return recordNumber;
     }
     
     /**
-     * Finds the first available position to write
-     * to in the file.  Accomplished by reading the 
-     * first byte of the records in the file 
-     * to determine whether they are marked as deleted.  
-     * If a deleted record is found, it's position in the file
-     * is returned.  If no deleted record is found,
-     * the position of the end of the file is
-     * returned.
-     * @return the first available position in which
-     *         a record can be written.
-     * @throws IOException
+     * Creates several records, reusing deleted records in ascending order
+     * before appending to the file.  Slots are allocated for every record
+     * in a single pass, and each run of records with consecutive numbers
+     * is written with a single write.  Synchronizes on <code>freeSlots</code>
+     * in the same way as <code>createRecord</code>.
+     * @param data the fields of each record to be created.
+     * @return the numbers of the newly created records, in
+     *         the order of <code>data</code>.
+     * @throws DBException if an IOException is thrown 
+     *          when attempting to write to the database file.
      */
-    private long firstAvailablePosition() throws IOException {
-        long filePosition = FILE_DATA_SECTION_OFFSET;
-        while (filePosition < database.length()) {
-            database.seek(filePosition);
-            byte validRecord = database.readByte();
-            if (validRecord == DELETED_FLAG) {
-                return filePosition;
+    public int[] createRecords(String[][] data) {
+        int[] recNos = new int[data.length];
+        byte[][] records = new byte[data.length][];
+        for (int i = 0; i < data.length; i++) {
+            records[i] = stringArrayToRecord(data[i]);
+        }
+        
+        synchronized (freeSlots) {
+            List<Integer> reusedSlots = new ArrayList<Integer>();
+            try {
+                int nextAppended = calculateRecordNumber(database.length());
+                for (int i = 0; i < data.length; i++) {
+                    Integer freeSlot = freeSlots.pollFirst();
+                    if (freeSlot != null) {
+                        reusedSlots.add(freeSlot);
+                        recNos[i] = freeSlot;
+                    }
+                    else {
+                        recNos[i] = nextAppended++;
+                    }
+                }
+                
+                int runStart = 0;
+                for (int i = 1; i <= data.length; i++) {
+                    if (i == data.length || recNos[i] != recNos[i - 1] + 1) {
+                        writeRun(recNos[runStart], records, runStart, i);
+                        runStart = i;
+                    }
+                }
+                for (int i = 0; i < data.length; i++) {
+                    addToIndexes(recNos[i], records[i]);
+                }
+                recordCount.addAndGet(data.length);
+            } catch (IOException e) {
+                freeSlots.addAll(reusedSlots);
+                log.throwing("DBAccessor.java", "createRecords", e);
+                throw new DBException("Could not create records", e);
             }
-            filePosition += RECORD_LENGTH;
         }
-        return database.length();
+        if (log.isLoggable(Level.FINE)) {
+            log.fine("Created " + data.length + " new records");
+        }
+        return recNos;
+    }
+    
+    /**
+     * Writes records with consecutive numbers in a single write.
+     * @param firstRecNo the number of the first record.
+     * @param records the records, as bytes.
+     * @param start the index in <code>records</code> of the first record.
+     * @param end the index in <code>records</code> after the last record.
+     * @throws IOException if the records cannot be written.
+     */
+    private void writeRun(int firstRecNo, byte[][] records, int start, int end) 
+            throws IOException {
+        
+        byte[] run = new byte[(end - start) * RECORD_LENGTH];
+        for (int i = start; i < end; i++) {
+            System.arraycopy(records[i], 0, run, (i - start) * RECORD_LENGTH, RECORD_LENGTH);
+        }
+        database.write(calculateFilePosition(firstRecNo), run);
     }
     
     /**
@@ -421,16 +880,27 @@ public class DBAccessor {
      * 		   the record.
      * @throws UnsupportedEncodingException 
      */
-    private String[] recordToStringArray(byte[] record) throws UnsupportedEncodingException {
-        
-        int offset = RECORD_DATA_SECTION_OFFSET;
+    private static String[] recordToStringArray(byte[] record) throws UnsupportedEncodingException {
+        return decodeRecordData(record, RECORD_DATA_SECTION_OFFSET);
+    }
+    
+    /**
+     * Decodes the fields of a record from the data section of the
+     * record, as it is laid out in the database file.
+     * @param buffer the <code>byte</code> array that holds the data section.
+     * @param offset the position of the data section in <code>buffer</code>.
+     * @return <code>String</code> array containing the fields of
+     *         the record.
+     * @throws UnsupportedEncodingException if US-ASCII is not supported.
+     */
+    public static String[] decodeRecordData(byte[] buffer, int offset) throws UnsupportedEncodingException {
         String[] data = new String[FIELD_LENGTHS_ARRAY.length];
         String field;
         
         for (int i = 0; i < FIELD_LENGTHS_ARRAY.length; i++) {
             int fieldLength = FIELD_LENGTHS_ARRAY[i];
             // POSSIBLE NPE
-            field = new String(record, offset, fieldLength, "US-ASCII").trim();
+            field = new String(buffer, offset, fieldLength, "US-ASCII").trim();
             data[i] = field;
             offset += fieldLength;
         }
@@ -444,7 +914,7 @@ public class DBAccessor {
      * 		  fields of the record to be written to file.
      * @return a <code>byte</code> array that can be written to file.
      */
-    private byte[] stringArrayToRecord(String[] data) {
+    private static byte[] stringArrayToRecord(String[] data) {
         byte[] emptyRecordByteArray = new byte[RECORD_LENGTH];
         String emptyRecordString = new String(emptyRecordByteArray);
         StringBuilder builder = new StringBuilder(emptyRecordString);
@@ -466,6 +936,19 @@ public class DBAccessor {
         return record;
     }
     
+    /**
+     * Encodes the fields of a record as the data section of the
+     * record, as it is laid out in the database file.
+     * @param data <code>String</code> array containing the
+     *        fields of the record.
+     * @return a <code>byte</code> array of <code>RECORD_DATA_LENGTH</code>
+     *         bytes.
+     */
+    public static byte[] encodeRecordData(String[] data) {
+        byte[] record = stringArrayToRecord(data);
+        return Arrays.copyOfRange(record, RECORD_DATA_SECTION_OFFSET, RECORD_LENGTH);
+    }
+    
     /**
      * Finds the position in the file for a given record number.
      * @param recNo the number of the record.
@@ -506,6 +989,14 @@ public class DBAccessor {
         }
     }
     
+    /**
+     * Getter.
+     * @return the number of records that are not marked as deleted.
+     */
+    public int getRecordCount() {
+        return recordCount.get();
+    }
+
     /**
      * Determines whether a file is marked as deleted in the database file.
      * @param recNo the number of the record.
@@ -516,11 +1007,8 @@ public class DBAccessor {
      */
     private boolean markedAsDeleted(int recNo) throws IOException {
         long position = calculateFilePosition(recNo);
-        synchronized (database) {
-            database.seek(position);
-            byte flag = database.readByte();
-            return flag == DELETED_FLAG;
-        }
+        byte flag = database.readByte(position);
+        return flag == DELETED_FLAG;
     }
     
     /**
@@ -537,7 +1025,7 @@ public class DBAccessor {
     }
     
     /**
-     * Closes the <code>RandomAccessFile</code> instance.
+     * Closes the <code>RecordStorage</code> instance.
      * @throws IOException
      */
     public void close() throws IOException {
@@ -1,36 +1,153 @@
 package suncertify.db;
 
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 /**
  * Objects of the <code>Data</code> class are used to create, read, update and delete
  * room records.  It uses the Facade design pattern to delegate database access
  * and record locking responsibilities to the DBAccessor and LockManager classes
- * respectively.
+ * respectively.  Unless constructed otherwise, a <code>RecordCache</code> holds
+ * the decoded records so that reads and searches are served from memory, with
+ * every change written through to the database file and then to the cache.
+ * The latencies of its operations are published through JMX by the
+ * <code>DatabaseMetricsMXBean</code> returned by <code>getMetrics</code>.
  * 
  * @author John Harding
  */
 public class Data implements CloseableDB {
     
+    /**
+     * Logger for the Data class.
+     */
+    private static final Logger log = Logger.getLogger(Data.class.getName());
+    
     /**
      * The static LockManager instance takes care of record 
      * locking and unlocking.
      */
     private static LockManager lockManager = new LockManager();
     
+    /**
+     * Index of the owner field in a record.
+     */
+    private static final int OWNER_INDEX = 6;
+    
     /**
      * The static DBAccessor instance manages access to the database.
      */
     private static DBAccessor database;
     
+    /**
+     * The static RecordCache instance holds the decoded records, 
+     * or is null if records are not cached.
+     */
+    private static RecordCache cache;
+    
+    /**
+     * The listeners notified of records that are created, updated
+     * or deleted through any <code>Data</code> instance.
+     */
+    private static final List<RecordChangeListener> listeners 
+            = new CopyOnWriteArrayList<RecordChangeListener>();
+    
+    /**
+     * The version of every record that has not changed since the
+     * database was opened.  It is taken from the clock so that
+     * versions differ from those of a previous server run.
+     */
+    private static final long INITIAL_VERSION = System.currentTimeMillis();
+    
+    /**
+     * The last version given to a changed record.
+     */
+    private static final AtomicLong lastVersion = new AtomicLong(INITIAL_VERSION);
+    
+    /**
+     * Maps the numbers of records that have changed since the
+     * database was opened to their version.
+     */
+    private static final Map<Integer, Long> versions = new ConcurrentHashMap<Integer, Long>();
+    
+    /**
+     * The latencies of reads.
+     */
+    private static final LatencyRecorder reads = new LatencyRecorder();
+    
+    /**
+     * The latencies of searches.
+     */
+    private static final LatencyRecorder finds = new LatencyRecorder();
+    
+    /**
+     * The latencies of creates.
+     */
+    private static final LatencyRecorder creates = new LatencyRecorder();
+    
+    /**
+     * The latencies of updates.
+     */
+    private static final LatencyRecorder updates = new LatencyRecorder();
+    
+    /**
+     * The latencies of deletes.
+     */
+    private static final LatencyRecorder deletes = new LatencyRecorder();
+    
+    /**
+     * Publishes the metrics of the database.
+     */
+    private static final DatabaseMetricsMXBean metrics = new Metrics();
+    
     /**
      * The constructor takes the file path of the database as its only argument.
+     * The database file is accessed using <code>StorageMode.FILE</code> and
+     * records are cached.
      * @param dbLocation the path to the database file.
      * @throws DBException if the <code>DBAccessor</code> instance 
      * 			<code>database</code> cannot be instantiated. 
      */
     public Data(final String dbLocation) {
-        database = new DBAccessor(dbLocation);
+        this(dbLocation, StorageMode.FILE);
+    }
+    
+    /**
+     * Constructs a <code>Data</code> instance that accesses the
+     * database file in the specified <code>StorageMode</code>.
+     * Records are cached.
+     * @param dbLocation the path to the database file.
+     * @param storageMode how the database file is to be accessed.
+     * @throws DBException if the <code>DBAccessor</code> instance 
+     *          <code>database</code> cannot be instantiated. 
+     */
+    public Data(final String dbLocation, final StorageMode storageMode) {
+        this(dbLocation, storageMode, true);
+    }
+    
+    /**
+     * Constructs a <code>Data</code> instance that accesses the
+     * database file in the specified <code>StorageMode</code>.
+     * @param dbLocation the path to the database file.
+     * @param storageMode how the database file is to be accessed.
+     * @param cacheRecords whether the records are read into memory
+     *        when the database is opened and served from there.
+     * @throws DBException if the <code>DBAccessor</code> instance 
+     *          <code>database</code> cannot be instantiated or the
+     *          records cannot be read into the cache.
+     */
+    public Data(final String dbLocation, final StorageMode storageMode,
+            final boolean cacheRecords) {
+        database = new DBAccessor(dbLocation, storageMode);
+        cache = cacheRecords ? new RecordCache(database.readAllRecords()) : null;
     }
     
     /**
@@ -39,7 +156,67 @@ public class Data implements CloseableDB {
      */
     @Override
     public String[] read(int recNo) throws RecordNotFoundException {
-        return database.readRecord(recNo);
+        long start = System.nanoTime();
+        try {
+            return readRecord(recNo);
+        } finally {
+            reads.recordSince(start);
+        }
+    }
+    
+    /**
+     * Reads a record without recording the latency of the read, for
+     * operations whose latency is recorded as a whole.
+     * @param recNo the number of the record.
+     * @return the fields of the record.
+     * @throws RecordNotFoundException if the record does not exist.
+     * @throws DBException if the read operation fails.
+     */
+    private String[] readRecord(int recNo) throws RecordNotFoundException {
+        if (cache == null) {
+            return database.readRecord(recNo);
+        }
+        String[] data = cache.get(recNo);
+        if (data == null) {
+            throw new RecordNotFoundException("Record number " + recNo + " does not exist");
+        }
+        return data;
+    }
+    
+    /**
+     * {@inheritDoc}
+     * @throws DBException if the read operation fails.
+     */
+    @Override
+    public Map<Integer, String[]> readRecords(int[] recNos) {
+        long start = System.nanoTime();
+        try {
+            return readCachedRecords(recNos);
+        } finally {
+            reads.recordSince(start);
+        }
+    }
+    
+    /**
+     * Reads records, from the cache if records are cached.
+     * @param recNos the numbers of the records.
+     * @return the records that exist, keyed by record number.
+     * @throws DBException if the read operation fails.
+     */
+    private Map<Integer, String[]> readCachedRecords(int[] recNos) {
+        if (cache == null) {
+            return database.readRecords(recNos);
+        }
+        int[] sortedRecNos = recNos.clone();
+        Arrays.sort(sortedRecNos);
+        Map<Integer, String[]> records = new LinkedHashMap<Integer, String[]>();
+        for (int recNo : sortedRecNos) {
+            String[] data = cache.get(recNo);
+            if (data != null) {
+                records.put(recNo, data);
+            }
+        }
+        return records;
     }
     
     /**
@@ -50,8 +227,39 @@ public class Data implements CloseableDB {
     public void update(int recNo, String[] data, long lockCookie)
             throws RecordNotFoundException, SecurityException {
         
-        if (isValidCookie(recNo, lockCookie)) {
+        long start = System.nanoTime();
+        try {
+            updateRecord(recNo, data, lockCookie);
+        } finally {
+            updates.recordSince(start);
+        }
+    }
+    
+    /**
+     * Updates a record, provided that it is locked with
+     * <code>lockCookie</code>.
+     * @param recNo the number of the record.
+     * @param data the new fields of the record.
+     * @param lockCookie the cookie that the record is locked with.
+     * @throws RecordNotFoundException if the record does not exist.
+     * @throws SecurityException if the record is not locked with
+     *         <code>lockCookie</code>.
+     * @throws DBException if the update operation fails.
+     */
+    private void updateRecord(int recNo, String[] data, long lockCookie)
+            throws RecordNotFoundException, SecurityException {
+        
+        /**
+         * Renewing the lease also validates the cookie, so a client that
+         * keeps updating a record it has locked does not lose the lock.
+         */
+        if (lockManager.renewLease(recNo, lockCookie)) {
             database.updateRecord(recNo, data);
+            String[] storedData = database.storedForm(data);
+            if (cache != null) {
+                cache.put(recNo, storedData);
+            }
+            recordChanged(recNo, storedData);
         }
         else {
             throw new SecurityException("Attempt to update record " 
@@ -67,12 +275,43 @@ public class Data implements CloseableDB {
     public void delete(int recNo, long lockCookie)
             throws RecordNotFoundException, SecurityException {
         
-        if (!database.recordExists(recNo)) {
+        long start = System.nanoTime();
+        try {
+            deleteRecord(recNo, lockCookie);
+        } finally {
+            deletes.recordSince(start);
+        }
+    }
+    
+    /**
+     * Deletes a record, provided that it is locked with
+     * <code>lockCookie</code>.
+     * @param recNo the number of the record.
+     * @param lockCookie the cookie that the record is locked with.
+     * @throws RecordNotFoundException if the record does not exist.
+     * @throws SecurityException if the record is not locked with
+     *         <code>lockCookie</code>.
+     * @throws DBException if the delete operation fails.
+     */
+    private void deleteRecord(int recNo, long lockCookie)
+            throws RecordNotFoundException, SecurityException {
+        
+        if (!recordExists(recNo)) {
             throw new RecordNotFoundException("Record number " + recNo + " does not exist");
         }
         
         if (isValidCookie(recNo, lockCookie)) {
+            /**
+             * The cached record is removed before the record is marked as
+             * deleted in the file. Once it is marked as deleted, createRecord
+             * may reuse the record number and cache the new record, which 
+             * must not then be removed.
+             */
+            if (cache != null) {
+                cache.remove(recNo);
+            }
             database.deleteRecord(recNo); 
+            recordChanged(recNo, null);
         }
         else {
             throw new SecurityException("Attempt to delete record " 
@@ -86,7 +325,73 @@ public class Data implements CloseableDB {
      */
     @Override
     public int[] find(String[] criteria) {
-        return database.find(criteria);
+        long start = System.nanoTime();
+        try {
+            return findRecordNumbers(criteria);
+        } finally {
+            finds.recordSince(start);
+        }
+    }
+    
+    /**
+     * Finds the records that match the criteria, in
+     * the cache if records are cached.
+     * @param criteria the search criteria.
+     * @return the numbers of the matching records.
+     * @throws DBException if the find operation fails.
+     */
+    private int[] findRecordNumbers(String[] criteria) {
+        if (cache == null) {
+            return database.find(criteria);
+        }
+        RecordMatcher matcher = database.newMatcher(criteria);
+        int[] candidates = database.indexedCandidates(criteria);
+        if (candidates == null) {
+            return cache.find(matcher);
+        }
+        return cache.find(matcher, candidates);
+    }
+    
+    /**
+     * {@inheritDoc}
+     * @throws DBException if the find operation fails.
+     */
+    @Override
+    public Map<Integer, String[]> findRecords(String[] criteria) {
+        Map<Integer, String[]> records = new LinkedHashMap<Integer, String[]>();
+        for (int recNo : find(criteria)) {
+            try {
+                records.put(recNo, readRecord(recNo));
+            } catch (RecordNotFoundException e) {
+                /**
+                 * The record was deleted by another client after it was found.
+                 */
+                continue;
+            }
+        }
+        return records;
+    }
+    
+    /**
+     * {@inheritDoc}
+     * @throws DBException if the find operation fails.
+     */
+    @Override
+    public SearchPage findPage(String[] criteria, int fromRecNo, int pageSize) {
+        long start = System.nanoTime();
+        try {
+            if (cache == null) {
+                return database.findPage(criteria, fromRecNo, pageSize);
+            }
+            if (pageSize < 1) {
+                throw new IllegalArgumentException("Page size must be at least one: " + pageSize);
+            }
+            RecordMatcher matcher = database.newMatcher(criteria);
+            int[] candidates = database.indexedCandidates(criteria);
+            return cache.findPage(matcher, candidates, fromRecNo, pageSize);
+        } finally {
+            finds.recordSince(start);
+        }
     }
     
     /**
@@ -95,7 +400,126 @@ public class Data implements CloseableDB {
      */
     @Override
     public int create(String[] data) throws DuplicateKeyException {
-        return database.createRecord(data);
+        long start = System.nanoTime();
+        try {
+            int recNo = database.createRecord(data);
+            String[] storedData = database.storedForm(data);
+            if (cache != null) {
+                cache.put(recNo, storedData);
+            }
+            recordChanged(recNo, storedData);
+            return recNo;
+        } finally {
+            creates.recordSince(start);
+        }
+    }
+    
+    /**
+     * {@inheritDoc}
+     * @throws DBException if the create operation fails.
+     */
+    @Override
+    public int[] createRecords(String[][] data) throws DuplicateKeyException {
+        long start = System.nanoTime();
+        try {
+            int[] recNos = database.createRecords(data);
+            for (int i = 0; i < recNos.length; i++) {
+                String[] storedData = database.storedForm(data[i]);
+                if (cache != null) {
+                    cache.put(recNos[i], storedData);
+                }
+                recordChanged(recNos[i], storedData);
+            }
+            return recNos;
+        } finally {
+            creates.recordSince(start);
+        }
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void addRecordChangeListener(RecordChangeListener listener) {
+        listeners.add(listener);
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void removeRecordChangeListener(RecordChangeListener listener) {
+        listeners.remove(listener);
+    }
+    
+    /**
+     * {@inheritDoc}
+     * @throws DBException if the read operation fails.
+     */
+    @Override
+    public VersionedRecord readVersioned(int recNo) throws RecordNotFoundException {
+        /**
+         * The version is taken before the record is read.  A record changed 
+         * in between is then returned with its previous version, which only
+         * means that it will be read again, whereas the reverse order could
+         * return the previous fields with the current version.
+         */
+        long version = versionOf(recNo);
+        return new VersionedRecord(read(recNo), version);
+    }
+    
+    /**
+     * {@inheritDoc}
+     * @throws DBException if the read operation fails.
+     */
+    @Override
+    public Map<Integer, VersionedRecord> readIfModified(int[] recNos, long[] versions) {
+        if (recNos.length != versions.length) {
+            throw new IllegalArgumentException("Record numbers and versions differ in length");
+        }
+        Map<Integer, VersionedRecord> modified = new LinkedHashMap<Integer, VersionedRecord>();
+        for (int i = 0; i < recNos.length; i++) {
+            long version = versionOf(recNos[i]);
+            if (version == versions[i]) {
+                continue;
+            }
+            try {
+                modified.put(recNos[i], new VersionedRecord(read(recNos[i]), version));
+            } catch (RecordNotFoundException e) {
+                modified.put(recNos[i], new VersionedRecord(null, version));
+            }
+        }
+        return modified;
+    }
+    
+    /**
+     * Returns the current version of a record.
+     * @param recNo the record number.
+     * @return the version of the record.
+     */
+    private long versionOf(int recNo) {
+        Long version = versions.get(recNo);
+        return version == null ? INITIAL_VERSION : version;
+    }
+    
+    /**
+     * Gives a record that has changed a new version and notifies the 
+     * registered listeners.  Each listener is given its own copy of 
+     * the fields.  The change has already been written, so a listener
+     * that fails is logged rather than allowed to fail the operation.
+     * @param recNo the number of the record that has changed.
+     * @param data the fields of the record as stored in the database
+     *        file, or null if the record has been deleted.
+     */
+    private void recordChanged(int recNo, String[] data) {
+        versions.put(recNo, lastVersion.incrementAndGet());
+        for (RecordChangeListener listener : listeners) {
+            try {
+                listener.recordChanged(recNo, data == null ? null : data.clone());
+            } catch (RuntimeException e) {
+                log.log(Level.WARNING, "Record change listener failed for record number " + recNo, e);
+            }
+        }
     }
     
     /**
@@ -103,12 +527,72 @@ public class Data implements CloseableDB {
      */
     @Override
     public long lock(int recNo) throws RecordNotFoundException {
-        if (!database.recordExists(recNo)) {
+        if (!recordExists(recNo)) {
             throw new RecordNotFoundException("Record number " + recNo + " does not exist");
         }
         return lockManager.lockRecord(recNo);
     }
     
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long tryLock(int recNo) throws RecordNotFoundException, LockTimeoutException {
+        return tryLock(recNo, 0);
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long tryLock(int recNo, long timeoutMillis) 
+            throws RecordNotFoundException, LockTimeoutException {
+        
+        if (!recordExists(recNo)) {
+            throw new RecordNotFoundException("Record number " + recNo + " does not exist");
+        }
+        return lockManager.tryLockRecord(recNo, timeoutMillis, TimeUnit.MILLISECONDS);
+    }
+    
+    /**
+     * {@inheritDoc}
+     * @throws DBException if the record cannot be read or updated.
+     */
+    @Override
+    public boolean bookRecord(int recNo, String owner, long timeoutMillis) 
+            throws RecordNotFoundException, SecurityException, LockTimeoutException {
+        
+        long cookie = tryLock(recNo, timeoutMillis);
+        try {
+            String[] data = read(recNo);
+            if (!data[OWNER_INDEX].equals("")) {
+                return false;
+            }
+            data[OWNER_INDEX] = owner;
+            update(recNo, data, cookie);
+            return true;
+        } finally {
+            releaseBookingLock(recNo, cookie);
+        }
+    }
+    
+    /**
+     * Releases the lock taken by <code>bookRecord</code>.  The lock may
+     * already have been released, if its lease expired and another client
+     * took it, in which case the failure is logged rather than thrown, so
+     * that the outcome of the booking is what the caller sees.
+     * @param recNo the number of the booked record.
+     * @param cookie the cookie that the record was locked with.
+     */
+    private void releaseBookingLock(int recNo, long cookie) {
+        try {
+            unlock(recNo, cookie);
+        } catch (SecurityException | RecordNotFoundException e) {
+            log.log(Level.WARNING, "Could not release the lock on record number " 
+                    + recNo + " after booking it", e);
+        }
+    }
+    
     /**
      * {@inheritDoc}
      */
@@ -125,6 +609,20 @@ public class Data implements CloseableDB {
         }
     }
     
+    /**
+     * Determines whether a record exists, consulting the
+     * cache if records are cached.
+     * @param recNo the number of the record.
+     * @return boolean
+     * @throws DBException if the database file cannot be read.
+     */
+    private boolean recordExists(int recNo) {
+        if (cache == null) {
+            return database.recordExists(recNo);
+        }
+        return cache.contains(recNo);
+    }
+    
     private boolean isValidCookie(int recNo, long lockCookie) {
         Long cookie = lockManager.getLockMap().get(recNo);
         
@@ -149,5 +647,50 @@ public class Data implements CloseableDB {
     public boolean hasLocalDatabaseConnection() {
         return true;
     }
+    
+    /**
+     * Returns the metrics of the database, which cover
+     * every <code>Data</code> instance in the JVM.
+     * @return the metrics.
+     */
+    public static DatabaseMetricsMXBean getMetrics() {
+        return metrics;
+    }
+    
+    /**
+     * Publishes the metrics of the database.
+     */
+    private static class Metrics implements DatabaseMetricsMXBean {
+        
+        @Override
+        public int getRecordCount() {
+            return (database == null) ? 0 : database.getRecordCount();
+        }
+        
+        @Override
+        public OperationMetrics getRead() {
+            return reads.snapshot();
+        }
+        
+        @Override
+        public OperationMetrics getFind() {
+            return finds.snapshot();
+        }
+        
+        @Override
+        public OperationMetrics getCreate() {
+            return creates.snapshot();
+        }
+        
+        @Override
+        public OperationMetrics getUpdate() {
+            return updates.snapshot();
+        }
+        
+        @Override
+        public OperationMetrics getDelete() {
+            return deletes.snapshot();
+        }
+    }
 
 }
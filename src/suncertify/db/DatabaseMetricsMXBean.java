@@ -0,0 +1,51 @@
+package suncertify.db;
+
+/**
+ * The metrics of the database that <code>Data</code> publishes through JMX.
+ * Every <code>Data</code> instance in the JVM shares one database, so the
+ * metrics cover the operations of all of them.
+ *
+ * @author John Harding
+ */
+public interface DatabaseMetricsMXBean {
+
+    /**
+     * Getter.
+     * @return the number of records that have not been deleted.
+     * @throws DBException if the database file cannot be read.
+     */
+    int getRecordCount();
+
+    /**
+     * Getter.
+     * @return the latencies of <code>read</code> and
+     *         <code>readRecords</code>.
+     */
+    OperationMetrics getRead();
+
+    /**
+     * Getter.
+     * @return the latencies of <code>find</code> and <code>findPage</code>.
+     */
+    OperationMetrics getFind();
+
+    /**
+     * Getter.
+     * @return the latencies of <code>create</code> and
+     *         <code>createRecords</code>.
+     */
+    OperationMetrics getCreate();
+
+    /**
+     * Getter.
+     * @return the latencies of <code>update</code>.
+     */
+    OperationMetrics getUpdate();
+
+    /**
+     * Getter.
+     * @return the latencies of <code>delete</code>.
+     */
+    OperationMetrics getDelete();
+
+}
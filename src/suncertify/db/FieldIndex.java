@@ -0,0 +1,140 @@
+package suncertify.db;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * An in-memory secondary index on one field of the records in the
+ * database file.  Field values are case-folded and held in a sorted map,
+ * so the records whose field begins with a given prefix are found with
+ * a range lookup rather than by examining every record.  Lookups take no
+ * lock; changes to the index are serialized on this object.  The index
+ * only narrows a search down to candidate records, which are still
+ * matched against the full criteria, so a lookup that races with a 
+ * change may return a record that no longer matches but never misses
+ * a record that matched before and after the change.
+ *
+ * @author John Harding
+ */
+class FieldIndex {
+    
+    /**
+     * The index of the field in a record.
+     */
+    private final int field;
+    
+    /**
+     * Maps case-folded field values to the numbers of
+     * the records that have that value.
+     */
+    private final ConcurrentSkipListMap<String, Set<Integer>> entries
+            = new ConcurrentSkipListMap<String, Set<Integer>>();
+    
+    /**
+     * Maps record numbers to the key they are indexed under,
+     * so that an entry can be removed without reading the
+     * previous value of the record.
+     */
+    private final Map<Integer, String> keys = new ConcurrentHashMap<Integer, String>();
+    
+    /**
+     * Class constructor.
+     * @param field the index of the field in a record.
+     */
+    FieldIndex(int field) {
+        this.field = field;
+    }
+    
+    /**
+     * Getter.
+     * @return the index of the indexed field in a record.
+     */
+    int getField() {
+        return field;
+    }
+    
+    /**
+     * Indexes a record, replacing any previous entry for the record.
+     * The new entry is added before the previous one is removed, so a
+     * lookup that races with the change finds the record under one key
+     * or the other, and a record whose key is unchanged is left alone.
+     * @param recNo the record number.
+     * @param data the fields of the record.
+     */
+    synchronized void put(int recNo, String[] data) {
+        String key = fold(data[field]);
+        String previousKey = keys.get(recNo);
+        if (key.equals(previousKey)) {
+            return;
+        }
+        Set<Integer> records = entries.get(key);
+        if (records == null) {
+            records = new ConcurrentSkipListSet<Integer>();
+            entries.put(key, records);
+        }
+        records.add(recNo);
+        keys.put(recNo, key);
+        if (previousKey != null) {
+            removeEntry(previousKey, recNo);
+        }
+    }
+    
+    /**
+     * Removes a record from the index.
+     * @param recNo the record number.
+     */
+    synchronized void remove(int recNo) {
+        String key = keys.remove(recNo);
+        if (key != null) {
+            removeEntry(key, recNo);
+        }
+    }
+    
+    /**
+     * Removes a record from the entry of a key, and the
+     * entry itself once it holds no records.
+     * @param key the key the record was indexed under.
+     * @param recNo the record number.
+     */
+    private void removeEntry(String key, int recNo) {
+        Set<Integer> records = entries.get(key);
+        records.remove(recNo);
+        if (records.isEmpty()) {
+            entries.remove(key);
+        }
+    }
+    
+    /**
+     * Returns the numbers of the records whose field begins
+     * with the specified prefix, ignoring case.
+     * @param prefix the prefix to look up.
+     * @return the matching record numbers in ascending order.
+     */
+    SortedSet<Integer> lookup(String prefix) {
+        String from = fold(prefix);
+        NavigableMap<String, Set<Integer>> range 
+                = entries.subMap(from, true, from + Character.MAX_VALUE, false);
+        SortedSet<Integer> result = new TreeSet<Integer>();
+        for (Set<Integer> records : range.values()) {
+            result.addAll(records);
+        }
+        return result;
+    }
+    
+    /**
+     * Case-folds a field value.
+     * @param value the value to fold.
+     * @return the folded value.
+     */
+    private String fold(String value) {
+        return value.toLowerCase(Locale.ENGLISH);
+    }
+
+}
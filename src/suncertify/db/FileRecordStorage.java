@@ -0,0 +1,90 @@
+package suncertify.db;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * <code>RecordStorage</code> implementation that reads from and writes
+ * to the database file with the positional read and write methods of
+ * <code>FileChannel</code>.  Positional operations do not change the
+ * position of the channel, so unlike a seek followed by a read on a
+ * shared <code>RandomAccessFile</code> they hold no state between calls
+ * and concurrent operations on different records never block each other.
+ * Exclusion between writers of the same record is provided by the
+ * lock cookies issued by <code>LockManager</code>.
+ *
+ * @author John Harding
+ */
+class FileRecordStorage implements RecordStorage {
+    
+    /**
+     * The <code>RandomAccessFile</code> that the channel belongs to.
+     */
+    private final RandomAccessFile file;
+    
+    /**
+     * The channel used to access the database file.
+     */
+    private final FileChannel channel;
+    
+    /**
+     * Class constructor.
+     * @param databaseFile the database file.
+     * @throws IOException if the file cannot be opened.
+     */
+    FileRecordStorage(File databaseFile) throws IOException {
+        file = new RandomAccessFile(databaseFile, "rw");
+        channel = file.getChannel();
+    }
+
+    @Override
+    public void read(long position, byte[] buffer) throws IOException {
+        read(position, ByteBuffer.wrap(buffer));
+    }
+
+    @Override
+    public byte readByte(long position) throws IOException {
+        ByteBuffer flag = ByteBuffer.allocate(1);
+        read(position, flag);
+        return flag.get(0);
+    }
+
+    @Override
+    public void write(long position, byte[] data) throws IOException {
+        ByteBuffer source = ByteBuffer.wrap(data);
+        while (source.hasRemaining()) {
+            channel.write(source, position + source.position());
+        }
+    }
+
+    @Override
+    public void writeByte(long position, byte value) throws IOException {
+        write(position, new byte[] {value});
+    }
+
+    @Override
+    public long length() throws IOException {
+        return channel.size();
+    }
+
+    @Override
+    public void close() throws IOException {
+        file.close();
+    }
+    
+    @Override
+    public void read(long position, ByteBuffer buffer) throws IOException {
+        long offset = position - buffer.position();
+        while (buffer.hasRemaining()) {
+            int count = channel.read(buffer, offset + buffer.position());
+            if (count < 0) {
+                throw new EOFException("End of file reached reading at position " + position);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,102 @@
+package suncertify.db;
+
+/**
+ * Divides latencies into buckets whose width grows with their value, so
+ * that any latency can be counted in constant space and time, to within
+ * <code>1 / 2^subBucketBits</code> of its value.  Values below twice the
+ * number of sub-buckets have a bucket each.  Above that, each bucket holds
+ * the values that share their top <code>subBucketBits + 1</code> bits.
+ * Instances are immutable; the counts themselves are kept by the caller.
+ *
+ * @author John Harding
+ */
+public final class LatencyBuckets {
+
+    /**
+     * The base two logarithm of the number of buckets
+     * between consecutive powers of two.
+     */
+    private final int subBucketBits;
+
+    /**
+     * The number of buckets between consecutive powers of two.
+     */
+    private final int subBuckets;
+
+    /**
+     * Class constructor.
+     * @param subBucketBits the base two logarithm of the number of
+     *        buckets between consecutive powers of two, which sets
+     *        the precision.
+     * @throws IllegalArgumentException if <code>subBucketBits</code>
+     *         is not from 1 to 16.
+     */
+    public LatencyBuckets(int subBucketBits) {
+        if (subBucketBits < 1 || subBucketBits > 16) {
+            throw new IllegalArgumentException("Invalid sub-bucket bits: " + subBucketBits);
+        }
+        this.subBucketBits = subBucketBits;
+        this.subBuckets = 1 << subBucketBits;
+    }
+
+    /**
+     * Getter.
+     * @return the number of buckets, enough for any
+     *         non-negative <code>long</code>.
+     */
+    public int getBucketCount() {
+        return (64 - subBucketBits + 1) * subBuckets;
+    }
+
+    /**
+     * Finds the bucket of a value.
+     * @param value the value, which must not be negative.
+     * @return the index of its bucket.
+     */
+    public int bucketOf(long value) {
+        if (value < 2 * subBuckets) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - subBucketBits;
+        return shift * subBuckets + (int) (value >>> shift);
+    }
+
+    /**
+     * Returns the largest value held by a bucket.
+     * @param bucket the index of the bucket.
+     * @return the value.
+     */
+    public long highestValueIn(int bucket) {
+        if (bucket < 2 * subBuckets) {
+            return bucket;
+        }
+        int shift = bucket / subBuckets - 1;
+        long subBucket = bucket - (long) shift * subBuckets;
+        return ((subBucket + 1) << shift) - 1;
+    }
+
+    /**
+     * Returns the value below which a proportion of the counted
+     * values fall, to the precision of the buckets.
+     * @param counts the number of values counted in each bucket.
+     * @param totalCount the sum of <code>counts</code>.
+     * @param maxValue the largest value counted.
+     * @param percentile the percentile, from 0 to 100.
+     * @return the value, or 0 if none have been counted.
+     */
+    public long valueAtPercentile(long[] counts, long totalCount, long maxValue, double percentile) {
+        if (totalCount == 0) {
+            return 0;
+        }
+        long target = Math.max(1, (long) Math.ceil(percentile / 100 * totalCount));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= target) {
+                return Math.min(highestValueIn(i), maxValue);
+            }
+        }
+        return maxValue;
+    }
+
+}
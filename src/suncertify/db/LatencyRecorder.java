@@ -0,0 +1,89 @@
+package suncertify.db;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counts the latencies of one kind of operation, for monitoring, in the
+ * <code>LatencyBuckets</code> of <code>BUCKETS</code>, so that any latency
+ * is recorded in constant space and time, to within one sixteenth of its
+ * value.  Recording takes no lock, so any number of threads may record
+ * at once.
+ *
+ * @author John Harding
+ */
+class LatencyRecorder {
+
+    /**
+     * The buckets that latencies are counted in.
+     */
+    private static final LatencyBuckets BUCKETS = new LatencyBuckets(4);
+
+    /**
+     * The number of latencies recorded in each bucket.
+     */
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS.getBucketCount());
+
+    /**
+     * The number of latencies recorded.
+     */
+    private final AtomicLong totalCount = new AtomicLong();
+
+    /**
+     * The sum of the latencies recorded, in nanoseconds.
+     */
+    private final AtomicLong totalNanos = new AtomicLong();
+
+    /**
+     * The largest latency recorded, in nanoseconds.
+     */
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    /**
+     * Records the latency of an operation that started at
+     * <code>startNanos</code> and has just finished.
+     * @param startNanos the <code>System.nanoTime</code> at which
+     *        the operation started.
+     */
+    void recordSince(long startNanos) {
+        long nanos = Math.max(0, System.nanoTime() - startNanos);
+        counts.incrementAndGet(BUCKETS.bucketOf(nanos));
+        totalCount.incrementAndGet();
+        totalNanos.addAndGet(nanos);
+        long max = maxNanos.get();
+        while (nanos > max && !maxNanos.compareAndSet(max, nanos)) {
+            max = maxNanos.get();
+        }
+    }
+
+    /**
+     * Summarises the latencies recorded so far.  Latencies recorded while
+     * the summary is taken may be counted in some of its figures only.
+     * @return the summary.
+     */
+    OperationMetrics snapshot() {
+        long[] snapshot = new long[counts.length()];
+        long count = 0;
+        for (int i = 0; i < snapshot.length; i++) {
+            snapshot[i] = counts.get(i);
+            count += snapshot[i];
+        }
+        long max = maxNanos.get();
+        long mean = (count == 0) ? 0 : totalNanos.get() / count;
+        return new OperationMetrics(count, micros(mean),
+                micros(BUCKETS.valueAtPercentile(snapshot, count, max, 50)),
+                micros(BUCKETS.valueAtPercentile(snapshot, count, max, 99)),
+                micros(BUCKETS.valueAtPercentile(snapshot, count, max, 99.9)), micros(max));
+    }
+
+    /**
+     * Converts nanoseconds to microseconds.
+     * @param nanos the nanoseconds.
+     * @return the microseconds.
+     */
+    private static long micros(long nanos) {
+        return TimeUnit.NANOSECONDS.toMicros(nanos);
+    }
+
+}
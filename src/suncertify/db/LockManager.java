@@ -2,6 +2,15 @@ package suncertify.db;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -12,48 +21,146 @@ import suncertify.application.Utils;
  * records. This is necessary when an attempt is made to
  * update or delete a record to ensure a record
  * is being edited by only one thread at a time.
+ * <p>
+ * Record numbers are spread over a fixed number of lock stripes.  Locking
+ * or unlocking a record only holds the stripe that the record belongs to,
+ * and threads waiting for a record wait on a <code>Condition</code> of
+ * their own for that record, so unlocking a record only wakes the threads 
+ * waiting for that record.
+ * <p>
+ * A lock is held on a lease.  The lease is renewed whenever the record is
+ * updated with the lock cookie, and a background thread releases locks whose
+ * lease has expired, so that a record locked by a client that has failed
+ * or disconnected becomes available to other clients again.
+ * <p>
+ * How long threads wait for locks, how many are waiting and how many
+ * locks time out or expire are published through JMX by the
+ * <code>LockMetricsMXBean</code> returned by <code>getMetrics</code>.
  * 
  * @author John Harding
  */
 public class LockManager {
     
     /**
-     * Mutex object used to synchronize on the 
-     * HashMap that maps locked record numbers
-     * to the cookie they are locked with.
+     * The number of lock stripes.
      */
-    private static final String MUTEX = "MUTEX";
+    private static final int NUMBER_OF_STRIPES = 64;
+    
+    /**
+     * The lock stripes.  A record is locked and unlocked
+     * while holding the stripe it belongs to.
+     */
+    private static final Stripe[] stripes = new Stripe[NUMBER_OF_STRIPES];
+    
+    static {
+        for (int i = 0; i < NUMBER_OF_STRIPES; i++) {
+            stripes[i] = new Stripe();
+        }
+    }
     
     /**
      * Maps the numbers of records that are locked to
-     * the cookie that they are locked with.
+     * the cookie that they are locked with.  Entries are only
+     * changed while holding the stripe of the record, but may be
+     * read without it.
      */
     private static final Map<Integer, Long> lockMap
-            = new HashMap<Integer, Long>();
+            = new ConcurrentHashMap<Integer, Long>();
+    
+    /**
+     * Maps the numbers of records that are locked to the
+     * <code>System.nanoTime</code> at which their lease expires.  Entries
+     * are only changed while holding the stripe of the record.
+     */
+    private static final Map<Integer, Long> leaseMap
+            = new ConcurrentHashMap<Integer, Long>();
+    
+    /**
+     * The default lease time of a lock in milliseconds.
+     */
+    public static final long DEFAULT_LEASE_TIME = 60000;
+    
+    /**
+     * The interval in milliseconds at which expired leases are released.
+     */
+    private static final long REAP_INTERVAL = 500;
+    
+    /**
+     * The lease time of a lock in nanoseconds.
+     */
+    private static volatile long leaseNanos 
+            = TimeUnit.MILLISECONDS.toNanos(DEFAULT_LEASE_TIME);
+    
+    /**
+     * Runs the task that releases locks whose lease has expired.
+     */
+    private static final ScheduledExecutorService reaper 
+            = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable task) {
+                    Thread thread = new Thread(task, "LockManager-reaper");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+    
+    static {
+        reaper.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                releaseExpiredLocks();
+            }
+        }, REAP_INTERVAL, REAP_INTERVAL, TimeUnit.MILLISECONDS);
+    }
     
     /**
      * The number of cookies that have been generated.
      */
-    private static long cookieCount = 0L;
+    private static final AtomicLong cookieCount = new AtomicLong();
+    
+    /**
+     * How long threads waited for the locks they obtained.
+     */
+    private static final LatencyRecorder lockWaits = new LatencyRecorder();
+    
+    /**
+     * The number of attempts to lock a record that timed out.
+     */
+    private static final AtomicLong lockTimeouts = new AtomicLong();
+    
+    /**
+     * The number of locks released because their lease expired.
+     */
+    private static final AtomicLong expiredLeases = new AtomicLong();
+    
+    /**
+     * The number of threads waiting to lock a record.
+     */
+    private static final AtomicInteger waitingThreads = new AtomicInteger();
+    
+    /**
+     * Publishes the metrics of record locking.
+     */
+    private static final LockMetricsMXBean metrics = new Metrics();
     
     /**
      * Logger for the LockManager class.
      */
-    private final Logger log = Logger.getLogger(LockManager.class.getName());
+    private static final Logger log = Logger.getLogger(LockManager.class.getName());
     
     /**
      * Class constructor.
      */
     public LockManager() {
-        Utils.setLogLevel(log, Level.FINER);
+        Utils.setLogLevel(log, Level.INFO);
     }
     
     /**
      * Locks a record by adding the record's number to the lockMap
-     * HashMap as key, with the generated cookie as value.  If a 
+     * map as key, with the generated cookie as value.  If a 
      * thread tries to obtain a lock on a record that is already
      * locked, the thread enters an inactive state consuming no
-     * CPU cycles until it has been notified that a record has been
+     * CPU cycles until it has been signalled that the record has been
      * unlocked, at which point it will attempt to lock the record 
      * again.
      * @param recNo the number of the record to be locked.
@@ -63,34 +170,100 @@ public class LockManager {
      *         a thread is in a waiting state.
      */
     public long lockRecord(int recNo) throws RecordNotFoundException {
-        String threadName = Thread.currentThread().getName();
+        long start = System.nanoTime();
+        Stripe stripe = stripeFor(recNo);
         
-        synchronized (MUTEX) {
+        stripe.lock.lock();
+        try {
             while (lockMap.containsKey(recNo)) {
-                log.info(threadName + ": Record number " + recNo + " is locked.  waiting...");
+                if (log.isLoggable(Level.FINE)) {
+                    log.fine("Record number " + recNo + " is locked.  waiting...");
+                }
                 try {
-                    MUTEX.wait();
+                    stripe.awaitUnlock(recNo);
                 } catch (InterruptedException e) {
                     log.throwing("LockManager.java", "lockRecord", e);
                     throw new RecordNotFoundException("Could not lock record number " + recNo);
                 }
             }
-            long cookie = generateCookie();
-            
-            log.info("Generated cookie for recNo "  + recNo + ": thread: " 
-                     + threadName + " cookie: " + cookie);
-            
-            lockMap.put(recNo, cookie);
-            log.info(threadName + ": Locked record number " + recNo);
-            
-            return cookie;
+            return grantLock(recNo, start);
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+    
+    /**
+     * Locks a record in the same way as <code>lockRecord</code>, except
+     * that a thread waits no longer than the specified time for the record
+     * to be unlocked.  A timeout of zero or less does not wait at all.
+     * @param recNo the number of the record to be locked.
+     * @param timeout the maximum time to wait.
+     * @param unit the unit of <code>timeout</code>.
+     * @return the cookie that the record has been locked with.
+     * @throws LockTimeoutException if the record is still locked
+     *         when the timeout elapses.
+     * @throws suncertify.db.RecordNotFoundException if an
+     *         <code>InterruptedException</code> occurs when
+     *         a thread is in a waiting state.
+     */
+    public long tryLockRecord(int recNo, long timeout, TimeUnit unit) 
+            throws RecordNotFoundException, LockTimeoutException {
+        
+        long start = System.nanoTime();
+        Stripe stripe = stripeFor(recNo);
+        long remaining = unit.toNanos(timeout);
+        
+        stripe.lock.lock();
+        try {
+            while (lockMap.containsKey(recNo)) {
+                if (remaining <= 0) {
+                    lockTimeouts.incrementAndGet();
+                    if (log.isLoggable(Level.FINE)) {
+                        log.fine("Timed out waiting to lock record number " + recNo);
+                    }
+                    throw new LockTimeoutException("Timed out waiting to lock record number " + recNo);
+                }
+                if (log.isLoggable(Level.FINE)) {
+                    log.fine("Record number " + recNo + " is locked.  waiting...");
+                }
+                try {
+                    remaining = stripe.awaitUnlock(recNo, remaining);
+                } catch (InterruptedException e) {
+                    log.throwing("LockManager.java", "tryLockRecord", e);
+                    throw new RecordNotFoundException("Could not lock record number " + recNo);
+                }
+            }
+            return grantLock(recNo, start);
+        } finally {
+            stripe.lock.unlock();
         }
     }
     
+    /**
+     * Generates a cookie and locks a record with it.  Must be called
+     * while holding the stripe of the record, once the record is unlocked.
+     * @param recNo the number of the record to be locked.
+     * @param start the <code>System.nanoTime</code> at which the
+     *        thread started to lock the record.
+     * @return the cookie that the record has been locked with.
+     */
+    private long grantLock(int recNo, long start) {
+        lockWaits.recordSince(start);
+        long cookie = generateCookie();
+        
+        lockMap.put(recNo, cookie);
+        leaseMap.put(recNo, System.nanoTime() + leaseNanos);
+        if (log.isLoggable(Level.FINE)) {
+            log.fine("Locked record number " + recNo + " with cookie " + cookie);
+        }
+        
+        return cookie;
+    }
+    
     /**
      * Unlocks a record by removing the record number from the 
-     * lockMap HashMap.  Other threads are notified that a record
-     * has been unlocked.
+     * lockMap map.  Threads waiting for the record are signalled
+     * that it has been unlocked.
      * @param recNo the number of the record to be unlocked.
      * @param cookie the cookie that the record was locked with.
      * @throws SecurityException if the value of cookie parameter
@@ -98,38 +271,275 @@ public class LockManager {
      * 			locked with.
      */
     public void unlockRecord(int recNo, long cookie) throws SecurityException {
-        String threadName = Thread.currentThread().getName();
+        Stripe stripe = stripeFor(recNo);
         
-        synchronized (MUTEX) {
-            if (lockMap.get(recNo) == cookie) {
-                log.info(threadName + ": Unlocking record number " + recNo);
+        stripe.lock.lock();
+        try {
+            Long lockCookie = lockMap.get(recNo);
+            if (lockCookie != null && lockCookie == cookie) {
                 lockMap.remove(recNo);
-                MUTEX.notifyAll();
-                log.info(threadName + ": Notifying threads that record number " + recNo + " is unlocked");
+                leaseMap.remove(recNo);
+                stripe.signalUnlock(recNo);
+                if (log.isLoggable(Level.FINE)) {
+                    log.fine("Unlocked record number " + recNo);
+                }
             }
             else {
                 log.warning("An illegal attempt was made to unlock record number " + recNo);
                 throw new SecurityException();
             }
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+    
+    /**
+     * Renews the lease on the lock of a record, provided that
+     * the record is locked with the specified cookie.
+     * @param recNo the number of the locked record.
+     * @param cookie the cookie that the record was locked with.
+     * @return true if the lease was renewed, false if the record
+     *         is not locked with <code>cookie</code>.
+     */
+    public boolean renewLease(int recNo, long cookie) {
+        Stripe stripe = stripeFor(recNo);
+        
+        stripe.lock.lock();
+        try {
+            Long lockCookie = lockMap.get(recNo);
+            if (lockCookie != null && lockCookie == cookie) {
+                leaseMap.put(recNo, System.nanoTime() + leaseNanos);
+                return true;
+            }
+            return false;
+        } finally {
+            stripe.lock.unlock();
         }
     }
     
+    /**
+     * Releases the locks whose lease has expired and signals 
+     * the threads waiting for those records.
+     */
+    private static void releaseExpiredLocks() {
+        for (Map.Entry<Integer, Long> lease : leaseMap.entrySet()) {
+            if (System.nanoTime() - lease.getValue() < 0) {
+                continue;
+            }
+            int recNo = lease.getKey();
+            Stripe stripe = stripeFor(recNo);
+            
+            stripe.lock.lock();
+            try {
+                /**
+                 * The lease may have been renewed, or the record unlocked
+                 * and locked again, since it was found to have expired.
+                 */
+                Long expiry = leaseMap.get(recNo);
+                if (expiry != null && System.nanoTime() - expiry >= 0) {
+                    log.warning("Lease expired, releasing lock on record number " + recNo);
+                    expiredLeases.incrementAndGet();
+                    lockMap.remove(recNo);
+                    leaseMap.remove(recNo);
+                    stripe.signalUnlock(recNo);
+                }
+            } finally {
+                stripe.lock.unlock();
+            }
+        }
+    }
+    
+    /**
+     * Sets the lease time of locks obtained from now on.
+     * @param leaseTime the lease time in milliseconds.
+     */
+    public static void setLeaseTime(long leaseTime) {
+        leaseNanos = TimeUnit.MILLISECONDS.toNanos(leaseTime);
+    }
+    
+    /**
+     * Returns the metrics of record locking, which cover
+     * every <code>LockManager</code> in the JVM.
+     * @return the metrics.
+     */
+    public static LockMetricsMXBean getMetrics() {
+        return metrics;
+    }
+    
     /**
      * Generates a lock cookie.
      * @return lock cookie.
      */
     private long generateCookie() {
-        cookieCount += 1;
-        return System.currentTimeMillis() + cookieCount;
+        return System.currentTimeMillis() + cookieCount.incrementAndGet();
+    }
+    
+    /**
+     * Returns the stripe that a record belongs to.
+     * @param recNo the record number.
+     * @return the <code>Stripe</code> of the record.
+     */
+    private static Stripe stripeFor(int recNo) {
+        return stripes[(recNo & Integer.MAX_VALUE) % NUMBER_OF_STRIPES];
     }
     
     /**
-     * Gets the HashMap that maps locked record numbers
+     * Gets the map that maps locked record numbers
      * to the cookies they are locked with.
      * @return lockMap
      */
     public Map<Integer, Long> getLockMap() {
         return lockMap;
     }
+    
+    /**
+     * A lock stripe.  It holds a <code>Condition</code> for each record
+     * of the stripe that threads are waiting to lock, which is removed
+     * once no thread is waiting for the record.  All methods must be 
+     * called while holding <code>lock</code>.
+     */
+    private static class Stripe {
+        
+        /**
+         * The lock held while locking or unlocking a record of the stripe.
+         */
+        private final ReentrantLock lock = new ReentrantLock();
+        
+        /**
+         * Maps record numbers to the threads waiting to lock them.
+         */
+        private final Map<Integer, Waiters> waiters = new HashMap<Integer, Waiters>();
+        
+        /**
+         * Waits until a record is signalled as unlocked.
+         * @param recNo the record number.
+         * @throws InterruptedException if the thread is interrupted
+         *         while waiting.
+         */
+        void awaitUnlock(int recNo) throws InterruptedException {
+            Waiters recordWaiters = addWaiter(recNo);
+            try {
+                recordWaiters.unlocked.await();
+            } finally {
+                removeWaiter(recNo, recordWaiters);
+            }
+        }
+        
+        /**
+         * Waits until a record is signalled as unlocked or
+         * the specified time elapses.
+         * @param recNo the record number.
+         * @param nanos the maximum time to wait in nanoseconds.
+         * @return an estimate of the time left to wait, which
+         *         is zero or less if the time has elapsed.
+         * @throws InterruptedException if the thread is interrupted
+         *         while waiting.
+         */
+        long awaitUnlock(int recNo, long nanos) throws InterruptedException {
+            Waiters recordWaiters = addWaiter(recNo);
+            try {
+                return recordWaiters.unlocked.awaitNanos(nanos);
+            } finally {
+                removeWaiter(recNo, recordWaiters);
+            }
+        }
+        
+        /**
+         * Registers the current thread as waiting for a record.
+         * @param recNo the record number.
+         * @return the threads waiting for the record.
+         */
+        private Waiters addWaiter(int recNo) {
+            Waiters recordWaiters = waiters.get(recNo);
+            if (recordWaiters == null) {
+                recordWaiters = new Waiters(lock.newCondition());
+                waiters.put(recNo, recordWaiters);
+            }
+            recordWaiters.count++;
+            waitingThreads.incrementAndGet();
+            return recordWaiters;
+        }
+        
+        /**
+         * Deregisters the current thread as waiting for a record.
+         * @param recNo the record number.
+         * @param recordWaiters the threads waiting for the record.
+         */
+        private void removeWaiter(int recNo, Waiters recordWaiters) {
+            recordWaiters.count--;
+            waitingThreads.decrementAndGet();
+            if (recordWaiters.count == 0) {
+                waiters.remove(recNo);
+            }
+        }
+        
+        /**
+         * Signals the threads waiting for a record that
+         * it has been unlocked.
+         * @param recNo the record number.
+         */
+        void signalUnlock(int recNo) {
+            Waiters recordWaiters = waiters.get(recNo);
+            if (recordWaiters != null) {
+                recordWaiters.unlocked.signalAll();
+            }
+        }
+    }
+    
+    /**
+     * Publishes the metrics of record locking.
+     */
+    private static class Metrics implements LockMetricsMXBean {
+        
+        @Override
+        public int getLockedRecords() {
+            return lockMap.size();
+        }
+        
+        @Override
+        public int getWaitingThreads() {
+            return waitingThreads.get();
+        }
+        
+        @Override
+        public OperationMetrics getLockWait() {
+            return lockWaits.snapshot();
+        }
+        
+        @Override
+        public long getLockTimeouts() {
+            return lockTimeouts.get();
+        }
+        
+        @Override
+        public long getExpiredLeases() {
+            return expiredLeases.get();
+        }
+    }
+    
+    /**
+     * The threads waiting to lock a record.
+     */
+    private static class Waiters {
+        
+        /**
+         * Signalled when the record is unlocked.
+         */
+        private final Condition unlocked;
+        
+        /**
+         * The number of threads waiting.
+         */
+        private int count;
+        
+        /**
+         * Class constructor.
+         * @param unlocked the <code>Condition</code> signalled
+         *        when the record is unlocked.
+         */
+        Waiters(Condition unlocked) {
+            this.unlocked = unlocked;
+        }
+    }
 
 }
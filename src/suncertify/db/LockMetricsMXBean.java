@@ -0,0 +1,41 @@
+package suncertify.db;
+
+/**
+ * The metrics of record locking that <code>LockManager</code> publishes
+ * through JMX, from which contention for records can be seen.
+ *
+ * @author John Harding
+ */
+public interface LockMetricsMXBean {
+
+    /**
+     * Getter.
+     * @return the number of records that are locked.
+     */
+    int getLockedRecords();
+
+    /**
+     * Getter.
+     * @return the number of threads waiting to lock a record.
+     */
+    int getWaitingThreads();
+
+    /**
+     * Getter.
+     * @return how long threads waited for the locks they obtained.
+     */
+    OperationMetrics getLockWait();
+
+    /**
+     * Getter.
+     * @return the number of attempts to lock a record that timed out.
+     */
+    long getLockTimeouts();
+
+    /**
+     * Getter.
+     * @return the number of locks released because their lease expired.
+     */
+    long getExpiredLeases();
+
+}
@@ -0,0 +1,32 @@
+package suncertify.db;
+
+/**
+ * Thrown when a record cannot be locked within the time
+ * allowed, because it remains locked by another client.
+ *
+ * @author John Harding
+ */
+public class LockTimeoutException extends Exception {
+    
+    /**
+     * The SUID.
+     */
+    private static final long serialVersionUID = 2112L;
+
+    /**
+     * Construct a new <code>LockTimeoutException</code>.
+     */
+    public LockTimeoutException() {
+        super();
+    }
+    
+    /**
+     * Construct a new <code>LockTimeoutException</code>
+     * with message.
+     * @param message the exception message.
+     */
+    public LockTimeoutException(String message) {
+        super(message);
+    }
+
+}
@@ -0,0 +1,194 @@
+package suncertify.db;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * <code>RecordStorage</code> implementation that maps the database
+ * file into memory.  Reads are served by absolute gets on the 
+ * <code>MappedByteBuffer</code> and so take no lock and perform
+ * no system calls.  Writes are made through the mapping and are
+ * serialized on this object.  When a write extends the file, the 
+ * new bytes are written through the <code>FileChannel</code>, and are
+ * read through it too until the file is mapped again.  The file is
+ * mapped again only once the bytes past the mapping amount to
+ * <code>MIN_REMAP_LENGTH</code> or a quarter of the mapping, whichever
+ * is larger, so that appending many records creates a handful of
+ * mappings rather than one for each record.  The mapping never extends
+ * past the end of the file, as the zeros that would pad the file would
+ * read as records if the application stopped before truncating them.
+ *
+ * @author John Harding
+ */
+class MappedRecordStorage implements RecordStorage {
+    
+    /**
+     * The file that is mapped.
+     */
+    private final RandomAccessFile file;
+    
+    /**
+     * The channel of <code>file</code>.
+     */
+    private final FileChannel channel;
+    
+    /**
+     * The smallest number of bytes past the end of the mapping
+     * for which the file is mapped again.
+     */
+    private static final long MIN_REMAP_LENGTH = 1024 * 1024;
+    
+    /**
+     * The current mapping of the start of the file.  Replaced
+     * as the file grows, hence volatile so that readers
+     * always see the latest mapping.
+     */
+    private volatile MappedByteBuffer buffer;
+    
+    /**
+     * The length of the file, which may be greater than
+     * the capacity of <code>buffer</code>.
+     */
+    private volatile long length;
+    
+    /**
+     * Class constructor.
+     * @param databaseFile the database file.
+     * @throws IOException if the file cannot be opened or mapped.
+     */
+    MappedRecordStorage(File databaseFile) throws IOException {
+        file = new RandomAccessFile(databaseFile, "rw");
+        channel = file.getChannel();
+        length = channel.size();
+        buffer = map(length);
+    }
+
+    @Override
+    public void read(long position, byte[] data) throws IOException {
+        ByteBuffer view = buffer;
+        checkBounds(position, data.length);
+        if (position + data.length > view.capacity()) {
+            readFromChannel(position, ByteBuffer.wrap(data));
+            return;
+        }
+        int start = (int) position;
+        for (int i = 0; i < data.length; i++) {
+            data[i] = view.get(start + i);
+        }
+    }
+
+    @Override
+    public void read(long position, ByteBuffer data) throws IOException {
+        ByteBuffer view = buffer;
+        int count = data.remaining();
+        checkBounds(position, count);
+        if (position + count > view.capacity()) {
+            readFromChannel(position, data);
+            return;
+        }
+        int start = (int) position;
+        for (int i = 0; i < count; i++) {
+            data.put(view.get(start + i));
+        }
+    }
+
+    @Override
+    public byte readByte(long position) throws IOException {
+        ByteBuffer view = buffer;
+        checkBounds(position, 1);
+        if (position >= view.capacity()) {
+            ByteBuffer data = ByteBuffer.allocate(1);
+            readFromChannel(position, data);
+            return data.get(0);
+        }
+        return view.get((int) position);
+    }
+
+    @Override
+    public synchronized void write(long position, byte[] data) throws IOException {
+        ByteBuffer view = buffer;
+        int mapped = (int) Math.max(0, Math.min(data.length, view.capacity() - position));
+        int start = (int) position;
+        for (int i = 0; i < mapped; i++) {
+            view.put(start + i, data[i]);
+        }
+        if (mapped == data.length) {
+            return;
+        }
+        ByteBuffer source = ByteBuffer.wrap(data, mapped, data.length - mapped);
+        while (source.hasRemaining()) {
+            channel.write(source, position + source.position());
+        }
+        length = Math.max(length, position + data.length);
+        if (length - view.capacity() >= Math.max(MIN_REMAP_LENGTH, view.capacity() / 4)) {
+            buffer = map(length);
+        }
+    }
+
+    @Override
+    public void writeByte(long position, byte value) throws IOException {
+        write(position, new byte[] {value});
+    }
+
+    @Override
+    public long length() {
+        return length;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        buffer.force();
+        file.close();
+    }
+    
+    /**
+     * Maps the file from its start to the specified length.
+     * @param length the number of bytes to map.
+     * @return the mapped region.
+     * @throws IOException if the file cannot be mapped or is too
+     *         large to be mapped in a single region.
+     */
+    private MappedByteBuffer map(long length) throws IOException {
+        if (length > Integer.MAX_VALUE) {
+            throw new IOException("File is too large to be mapped: " + length + " bytes");
+        }
+        return channel.map(FileChannel.MapMode.READ_WRITE, 0, length);
+    }
+    
+    /**
+     * Reads bytes past the end of the mapping through the channel.
+     * Positional reads on a <code>FileChannel</code> may be made
+     * concurrently, so this takes no lock either.
+     * @param position the position in the file to read from.
+     * @param data the buffer into which the bytes are read.
+     * @throws IOException if the bytes cannot be read.
+     */
+    private void readFromChannel(long position, ByteBuffer data) throws IOException {
+        long next = position;
+        while (data.hasRemaining()) {
+            int count = channel.read(data, next);
+            if (count < 0) {
+                throw new EOFException("Cannot read past the end of the file at position " + next);
+            }
+            next += count;
+        }
+    }
+    
+    /**
+     * Checks that a read lies within the file.
+     * @param position the position of the first byte to read.
+     * @param count the number of bytes to read.
+     * @throws EOFException if the read extends past the end of the file.
+     */
+    private void checkBounds(long position, int count) throws EOFException {
+        if (position < 0 || position + count > length) {
+            throw new EOFException("Cannot read " + count + " bytes at position " + position);
+        }
+    }
+
+}
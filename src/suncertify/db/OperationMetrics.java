@@ -0,0 +1,112 @@
+package suncertify.db;
+
+import java.beans.ConstructorProperties;
+
+/**
+ * A summary of the latencies of one kind of operation since the database
+ * was opened, as published through JMX.  Latencies are in microseconds,
+ * and the percentiles are accurate to within about six percent.
+ *
+ * @author John Harding
+ */
+public class OperationMetrics {
+
+    /**
+     * The number of operations.
+     */
+    private final long count;
+
+    /**
+     * The mean latency.
+     */
+    private final long meanMicros;
+
+    /**
+     * The median latency.
+     */
+    private final long p50Micros;
+
+    /**
+     * The 99th percentile latency.
+     */
+    private final long p99Micros;
+
+    /**
+     * The 99.9th percentile latency.
+     */
+    private final long p999Micros;
+
+    /**
+     * The largest latency.
+     */
+    private final long maxMicros;
+
+    /**
+     * Class constructor.
+     * @param count the number of operations.
+     * @param meanMicros the mean latency.
+     * @param p50Micros the median latency.
+     * @param p99Micros the 99th percentile latency.
+     * @param p999Micros the 99.9th percentile latency.
+     * @param maxMicros the largest latency.
+     */
+    @ConstructorProperties({"count", "meanMicros", "p50Micros", "p99Micros", "p999Micros", "maxMicros"})
+    public OperationMetrics(long count, long meanMicros, long p50Micros, long p99Micros,
+            long p999Micros, long maxMicros) {
+        this.count = count;
+        this.meanMicros = meanMicros;
+        this.p50Micros = p50Micros;
+        this.p99Micros = p99Micros;
+        this.p999Micros = p999Micros;
+        this.maxMicros = maxMicros;
+    }
+
+    /**
+     * Getter.
+     * @return the number of operations.
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Getter.
+     * @return the mean latency in microseconds.
+     */
+    public long getMeanMicros() {
+        return meanMicros;
+    }
+
+    /**
+     * Getter.
+     * @return the median latency in microseconds.
+     */
+    public long getP50Micros() {
+        return p50Micros;
+    }
+
+    /**
+     * Getter.
+     * @return the 99th percentile latency in microseconds.
+     */
+    public long getP99Micros() {
+        return p99Micros;
+    }
+
+    /**
+     * Getter.
+     * @return the 99.9th percentile latency in microseconds.
+     */
+    public long getP999Micros() {
+        return p999Micros;
+    }
+
+    /**
+     * Getter.
+     * @return the largest latency in microseconds.
+     */
+    public long getMaxMicros() {
+        return maxMicros;
+    }
+
+}
@@ -0,0 +1,169 @@
+package suncertify.db;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * An in-memory copy of the decoded records in the database file,
+ * keyed by record number.  <code>Data</code> populates the cache when
+ * the database is opened and writes through it whenever a record is
+ * created, updated or deleted, so that reads and searches never have to
+ * access the file.  Arrays are copied on the way in and out of the cache
+ * because callers such as <code>Room</code> modify the arrays they are given.
+ *
+ * @author John Harding
+ */
+class RecordCache {
+    
+    /**
+     * Maps record numbers to the fields of the record.  Sorted
+     * so that searches return record numbers in file order.
+     */
+    private final ConcurrentSkipListMap<Integer, String[]> records
+            = new ConcurrentSkipListMap<Integer, String[]>();
+    
+    /**
+     * Class constructor.
+     * @param initialRecords the records in the database file
+     *        when it was opened.
+     */
+    RecordCache(Map<Integer, String[]> initialRecords) {
+        records.putAll(initialRecords);
+    }
+    
+    /**
+     * Returns a copy of a cached record.
+     * @param recNo the record number.
+     * @return the fields of the record, or null if the record
+     *         does not exist.
+     */
+    String[] get(int recNo) {
+        String[] data = records.get(recNo);
+        return data == null ? null : data.clone();
+    }
+    
+    /**
+     * Indicates whether a record exists.
+     * @param recNo the record number.
+     * @return boolean
+     */
+    boolean contains(int recNo) {
+        return records.containsKey(recNo);
+    }
+    
+    /**
+     * Stores a copy of a record.
+     * @param recNo the record number.
+     * @param data the fields of the record as stored in the database file.
+     */
+    void put(int recNo, String[] data) {
+        records.put(recNo, data.clone());
+    }
+    
+    /**
+     * Removes a record.
+     * @param recNo the record number.
+     */
+    void remove(int recNo) {
+        records.remove(recNo);
+    }
+    
+    /**
+     * Returns the numbers of the cached records that match
+     * a <code>RecordMatcher</code>, in ascending order.
+     * @param matcher the matcher built from the search criteria.
+     * @return the matching record numbers.
+     */
+    int[] find(RecordMatcher matcher) {
+        List<Integer> matches = new ArrayList<Integer>();
+        if (matcher.canMatch()) {
+            for (Map.Entry<Integer, String[]> entry : records.entrySet()) {
+                if (matcher.matches(entry.getValue())) {
+                    matches.add(entry.getKey());
+                }
+            }
+        }
+        return toArray(matches);
+    }
+    
+    /**
+     * Returns the numbers of the candidate records that are cached
+     * and match a <code>RecordMatcher</code>.
+     * @param matcher the matcher built from the search criteria.
+     * @param candidates the numbers of the records to match, in 
+     *        ascending order.
+     * @return the matching record numbers.
+     */
+    int[] find(RecordMatcher matcher, int[] candidates) {
+        List<Integer> matches = new ArrayList<Integer>();
+        if (matcher.canMatch()) {
+            for (int recNo : candidates) {
+                String[] data = records.get(recNo);
+                if (data != null && matcher.matches(data)) {
+                    matches.add(recNo);
+                }
+            }
+        }
+        return toArray(matches);
+    }
+    
+    /**
+     * Returns a page of the cached records that match a 
+     * <code>RecordMatcher</code>, starting from the specified record 
+     * number.
+     * @param matcher the matcher built from the search criteria.
+     * @param candidates the numbers of the records to match, in 
+     *        ascending order, or null to match every record.
+     * @param fromRecNo the record number to start searching from.
+     * @param pageSize the maximum number of records on the page.
+     * @return a <code>SearchPage</code> of copies of the matching records.
+     */
+    SearchPage findPage(RecordMatcher matcher, int[] candidates, int fromRecNo, int pageSize) {
+        Map<Integer, String[]> matches = new LinkedHashMap<Integer, String[]>();
+        if (!matcher.canMatch()) {
+            return new SearchPage(matches, SearchPage.LAST_PAGE);
+        }
+        if (candidates != null) {
+            for (int recNo : candidates) {
+                if (recNo < fromRecNo) {
+                    continue;
+                }
+                String[] data = records.get(recNo);
+                if (data != null && matcher.matches(data)) {
+                    if (matches.size() == pageSize) {
+                        return new SearchPage(matches, recNo);
+                    }
+                    matches.put(recNo, data.clone());
+                }
+            }
+        }
+        else {
+            for (Map.Entry<Integer, String[]> entry : records.tailMap(fromRecNo).entrySet()) {
+                if (matcher.matches(entry.getValue())) {
+                    if (matches.size() == pageSize) {
+                        return new SearchPage(matches, entry.getKey());
+                    }
+                    matches.put(entry.getKey(), entry.getValue().clone());
+                }
+            }
+        }
+        return new SearchPage(matches, SearchPage.LAST_PAGE);
+    }
+    
+    /**
+     * Converts a list of record numbers to an array.
+     * @param matches the record numbers.
+     * @return an <code>int</code> array.
+     */
+    private int[] toArray(List<Integer> matches) {
+        int[] result = new int[matches.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = matches.get(i);
+        }
+        return result;
+    }
+
+}
@@ -0,0 +1,23 @@
+package suncertify.db;
+
+import java.util.EventListener;
+
+/**
+ * The listener interface for receiving notification of records that
+ * have been created, updated or deleted.  Listeners are notified on the
+ * thread that changed the record, once the change has been written, and
+ * so must return promptly.
+ *
+ * @author John Harding
+ */
+public interface RecordChangeListener extends EventListener {
+
+    /**
+     * Invoked when a record has been created, updated or deleted.
+     * @param recNo the number of the record that has changed.
+     * @param data the fields of the record, or null if the
+     *        record has been deleted.
+     */
+    public void recordChanged(int recNo, String[] data);
+
+}
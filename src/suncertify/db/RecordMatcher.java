@@ -0,0 +1,200 @@
+package suncertify.db;
+
+/**
+ * Matches the fields of records against search criteria.  A criteria
+ * array is examined once when the matcher is created, so the cost of
+ * matching a record is only that of comparing the non-null criteria 
+ * with the beginning of the corresponding fields, ignoring case.
+ * A record matches if <code>criteria[n]</code> matches the beginning
+ * of <code>data[n]</code> for all non-null <code>criteria[n]</code>.
+ * Criteria in which every element is null, or whose length is not
+ * the number of fields in a record, match no records.
+ * <p>
+ * Records may be matched either as decoded fields or as the raw bytes
+ * read from the database file.  For the latter the criteria are encoded
+ * as lower case US-ASCII bytes when the matcher is created, and each field
+ * is compared in place, skipping the leading and trailing bytes that 
+ * <code>String.trim()</code> would remove when the field is decoded.
+ * Matching raw bytes therefore gives the same result as matching the
+ * decoded fields, without allocating anything per record.
+ *
+ * @author John Harding
+ */
+class RecordMatcher {
+    
+    /**
+     * The criteria being matched.
+     */
+    private final String[] criteria;
+    
+    /**
+     * The lower case US-ASCII encoding of each non-null 
+     * criteria element.
+     */
+    private final byte[][] encodedCriteria;
+    
+    /**
+     * The position of each field within the bytes of a record.
+     */
+    private final int[] fieldOffsets;
+    
+    /**
+     * The length in bytes of each field.
+     */
+    private final int[] fieldLengths;
+    
+    /**
+     * Whether the criteria can match any record.
+     */
+    private final boolean canMatch;
+    
+    /**
+     * Class constructor.
+     * @param criteria the search criteria.
+     * @param fieldLengths the length in bytes of each field in a record.
+     * @param dataOffset the position of the first field within the
+     *        bytes of a record.
+     */
+    RecordMatcher(String[] criteria, int[] fieldLengths, int dataOffset) {
+        this.criteria = criteria;
+        this.fieldLengths = fieldLengths;
+        fieldOffsets = new int[fieldLengths.length];
+        encodedCriteria = new byte[criteria.length][];
+        
+        int offset = dataOffset;
+        for (int i = 0; i < fieldLengths.length; i++) {
+            fieldOffsets[i] = offset;
+            offset += fieldLengths[i];
+        }
+        
+        boolean hasCriteria = false;
+        boolean encodable = true;
+        if (criteria.length == fieldLengths.length) {
+            for (int i = 0; i < criteria.length; i++) {
+                if (criteria[i] != null) {
+                    hasCriteria = true;
+                    encodedCriteria[i] = encode(criteria[i]);
+                    encodable &= encodedCriteria[i] != null;
+                }
+            }
+        }
+        canMatch = hasCriteria && encodable;
+    }
+    
+    /**
+     * Indicates whether the criteria can match any record.
+     * @return boolean
+     */
+    boolean canMatch() {
+        return canMatch;
+    }
+    
+    /**
+     * Attempts to match a record's fields with the criteria.
+     * @param data array containing the fields of a record.
+     * @return <code>boolean</code> indicating a match or not.
+     */
+    boolean matches(String[] data) {
+        if (!canMatch) {
+            return false;
+        }
+        for (int i = 0; i < criteria.length; i++) {
+            String query = criteria[i];
+            if (query != null && !data[i].regionMatches(true, 0, query, 0, query.length())) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * Attempts to match the bytes of a record, as read from the 
+     * database file, with the criteria.
+     * @param record the bytes that constitute the record.
+     * @return <code>boolean</code> indicating a match or not.
+     */
+    boolean matches(byte[] record) {
+        if (!canMatch) {
+            return false;
+        }
+        for (int i = 0; i < encodedCriteria.length; i++) {
+            byte[] query = encodedCriteria[i];
+            if (query != null && !matchesField(record, fieldOffsets[i], fieldLengths[i], query)) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * Determines whether a field, once trimmed, begins with the
+     * encoded query, ignoring case.
+     * @param record the bytes that constitute the record.
+     * @param offset the position of the field in the record.
+     * @param length the length of the field.
+     * @param query the lower case encoded query.
+     * @return boolean
+     */
+    private boolean matchesField(byte[] record, int offset, int length, byte[] query) {
+        int start = offset;
+        int end = offset + length;
+        while (start < end && isTrimmed(record[start])) {
+            start++;
+        }
+        while (end > start && isTrimmed(record[end - 1])) {
+            end--;
+        }
+        if (query.length > end - start) {
+            return false;
+        }
+        for (int i = 0; i < query.length; i++) {
+            if (toLowerCase(record[start + i]) != query[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * Indicates whether <code>String.trim()</code> removes the character 
+     * that a byte is decoded to. Bytes outside US-ASCII are decoded to 
+     * the replacement character, which is not removed.
+     * @param b the byte.
+     * @return boolean
+     */
+    private static boolean isTrimmed(byte b) {
+        return b >= 0 && b <= ' ';
+    }
+    
+    /**
+     * Converts an upper case US-ASCII letter to lower case.
+     * @param b the byte.
+     * @return the lower case byte.
+     */
+    private static byte toLowerCase(byte b) {
+        if (b >= 'A' && b <= 'Z') {
+            return (byte) (b + ('a' - 'A'));
+        }
+        return b;
+    }
+    
+    /**
+     * Encodes a criteria element as lower case US-ASCII bytes.
+     * @param query the criteria element.
+     * @return the encoded bytes, or null if the element contains
+     *         characters outside US-ASCII, which can never match 
+     *         a decoded field.
+     */
+    private static byte[] encode(String query) {
+        byte[] encoded = new byte[query.length()];
+        for (int i = 0; i < encoded.length; i++) {
+            char c = query.charAt(i);
+            if (c > 0x7F) {
+                return null;
+            }
+            encoded[i] = toLowerCase((byte) c);
+        }
+        return encoded;
+    }
+
+}
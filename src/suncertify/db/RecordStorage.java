@@ -0,0 +1,71 @@
+package suncertify.db;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Implemented by classes that provide <code>DBAccessor</code> with
+ * positional access to the bytes of the database file.  Implementations
+ * are responsible for making each individual operation thread safe.
+ *
+ * @author John Harding
+ */
+interface RecordStorage {
+    
+    /**
+     * Reads <code>buffer.length</code> bytes starting at the
+     * specified position in the file.
+     * @param position the position in the file to read from.
+     * @param buffer the array into which the bytes are read.
+     * @throws IOException if the bytes cannot be read.
+     */
+    void read(long position, byte[] buffer) throws IOException;
+    
+    /**
+     * Reads bytes starting at the specified position in the file until
+     * the buffer has no bytes remaining.
+     * @param position the position in the file to read from.
+     * @param buffer the buffer into which the bytes are read.
+     * @throws IOException if the bytes cannot be read.
+     */
+    void read(long position, ByteBuffer buffer) throws IOException;
+    
+    /**
+     * Reads a single byte at the specified position in the file.
+     * @param position the position in the file to read from.
+     * @return the byte read.
+     * @throws IOException if the byte cannot be read.
+     */
+    byte readByte(long position) throws IOException;
+    
+    /**
+     * Writes an array of bytes to the file starting at the 
+     * specified position, extending the file if necessary.
+     * @param position the position in the file to write to.
+     * @param data the bytes to write.
+     * @throws IOException if the bytes cannot be written.
+     */
+    void write(long position, byte[] data) throws IOException;
+    
+    /**
+     * Writes a single byte to the file at the specified position.
+     * @param position the position in the file to write to.
+     * @param value the byte to write.
+     * @throws IOException if the byte cannot be written.
+     */
+    void writeByte(long position, byte value) throws IOException;
+    
+    /**
+     * Returns the length of the file.
+     * @return the length of the file in bytes.
+     * @throws IOException if the length cannot be determined.
+     */
+    long length() throws IOException;
+    
+    /**
+     * Releases the underlying file.
+     * @throws IOException if the file cannot be closed.
+     */
+    void close() throws IOException;
+
+}
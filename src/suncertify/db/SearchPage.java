@@ -0,0 +1,77 @@
+package suncertify.db;
+
+import java.io.Serializable;
+import java.util.Map;
+
+/**
+ * One page of the records that match a search, in record number order.
+ * A search is continued by searching again from <code>nextRecNo</code>,
+ * which is the number of the first matching record that did not fit on
+ * the page, until the last page is returned.  Records that are created,
+ * updated or deleted between pages are seen by the following pages only
+ * if their record number has not yet been passed.
+ *
+ * @author John Harding
+ */
+public class SearchPage implements Serializable {
+
+    /**
+     * The SUID.
+     */
+    private static final long serialVersionUID = 2222L;
+
+    /**
+     * The value of <code>nextRecNo</code> for the last page.
+     */
+    public static final int LAST_PAGE = -1;
+
+    /**
+     * Maps the numbers of the records on the page to their fields.
+     */
+    private final Map<Integer, String[]> records;
+
+    /**
+     * The record number to continue the search from,
+     * or <code>LAST_PAGE</code>.
+     */
+    private final int nextRecNo;
+
+    /**
+     * Class constructor.
+     * @param records the numbers of the records on the page
+     *        mapped to their fields, in record number order.
+     * @param nextRecNo the record number to continue the search
+     *        from, or <code>LAST_PAGE</code>.
+     */
+    public SearchPage(Map<Integer, String[]> records, int nextRecNo) {
+        this.records = records;
+        this.nextRecNo = nextRecNo;
+    }
+
+    /**
+     * Getter.
+     * @return the numbers of the records on the page
+     *         mapped to their fields.
+     */
+    public Map<Integer, String[]> getRecords() {
+        return records;
+    }
+
+    /**
+     * Getter.
+     * @return the record number to continue the search
+     *         from, or <code>LAST_PAGE</code>.
+     */
+    public int getNextRecNo() {
+        return nextRecNo;
+    }
+
+    /**
+     * Indicates whether this is the last page of the search.
+     * @return boolean
+     */
+    public boolean isLastPage() {
+        return nextRecNo == LAST_PAGE;
+    }
+
+}
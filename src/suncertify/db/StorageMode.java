@@ -0,0 +1,22 @@
+package suncertify.db;
+
+/**
+ * Enumeration representing the ways in which <code>DBAccessor</code>
+ * can access the underlying database file.
+ *
+ * @author John Harding
+ */
+public enum StorageMode {
+    
+    /**
+     * Records are read from and written to the file
+     * by explicit file IO operations.
+     */
+    FILE,
+    
+    /**
+     * The file is mapped into memory and records are 
+     * read directly from the mapped region.
+     */
+    MAPPED
+}
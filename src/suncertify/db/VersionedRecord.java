@@ -0,0 +1,67 @@
+package suncertify.db;
+
+import java.io.Serializable;
+
+/**
+ * The fields of a record together with the version of the record
+ * they were read at.  The version of a record changes whenever the
+ * record is created, updated or deleted, so a copy of the record 
+ * held by a client is known to be current while its version is the
+ * same as the version held by <code>Data</code>.
+ *
+ * @author John Harding
+ */
+public class VersionedRecord implements Serializable {
+
+    /**
+     * The SUID.
+     */
+    private static final long serialVersionUID = 2332L;
+
+    /**
+     * The fields of the record, or null if the record has been deleted.
+     */
+    private final String[] data;
+
+    /**
+     * The version of the record.
+     */
+    private final long version;
+
+    /**
+     * Class constructor.
+     * @param data the fields of the record, or null if
+     *        the record has been deleted.
+     * @param version the version of the record.
+     */
+    public VersionedRecord(String[] data, long version) {
+        this.data = data;
+        this.version = version;
+    }
+
+    /**
+     * Getter.
+     * @return the fields of the record, or null if
+     *         the record has been deleted.
+     */
+    public String[] getData() {
+        return data;
+    }
+
+    /**
+     * Getter.
+     * @return the version of the record.
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Indicates whether the record has been deleted.
+     * @return boolean
+     */
+    public boolean isDeleted() {
+        return data == null;
+    }
+
+}
@@ -0,0 +1,23 @@
+package suncertify.network;
+
+/**
+ * The metrics of the admission control of the server, which
+ * <code>AdmissionControlledDB</code> publishes through JMX.
+ *
+ * @author John Harding
+ */
+public interface AdmissionControlMXBean {
+
+    /**
+     * Getter.
+     * @return the number of searches rejected.
+     */
+    long getRejectedSearches();
+
+    /**
+     * Getter.
+     * @return the number of reads rejected.
+     */
+    long getRejectedReads();
+
+}
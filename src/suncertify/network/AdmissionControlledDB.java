@@ -0,0 +1,307 @@
+package suncertify.network;
+
+import java.io.IOException;
+import java.util.Map;
+
+import suncertify.db.CloseableDB;
+import suncertify.db.DBException;
+import suncertify.db.DuplicateKeyException;
+import suncertify.db.LockTimeoutException;
+import suncertify.db.RecordChangeListener;
+import suncertify.db.RecordNotFoundException;
+import suncertify.db.SearchPage;
+import suncertify.db.SecurityException;
+import suncertify.db.VersionedRecord;
+
+/**
+ * <code>AdmissionControlledDB</code> stands in front of the database that
+ * the server shares between its clients, and limits how many searches
+ * and how many reads execute at once.  Searches and reads beyond their
+ * limit wait in a bounded queue for a bounded time, and are rejected
+ * with <code>ServerBusyException</code> if the queue is full or the wait
+ * times out.  Locking, booking and other changes are never limited, so
+ * a burst of searches cannot take the capacity that bookings need.
+ * The numbers of rejected searches and reads are published through JMX.
+ *
+ * @author John Harding
+ */
+public class AdmissionControlledDB implements CloseableDB, AdmissionControlMXBean {
+
+    /**
+     * The default number of searches that may execute at once.
+     * Searches are bound by processor and disk, so more than
+     * one per processor only lengthens each of them.
+     */
+    public static final int DEFAULT_MAX_SEARCHES
+            = Math.max(2, Runtime.getRuntime().availableProcessors());
+
+    /**
+     * The default number of searches that may wait to execute.
+     */
+    public static final int DEFAULT_MAX_QUEUED_SEARCHES = 64;
+
+    /**
+     * The default number of reads that may execute at once.
+     */
+    public static final int DEFAULT_MAX_READS = 4 * DEFAULT_MAX_SEARCHES;
+
+    /**
+     * The default number of reads that may wait to execute.
+     */
+    public static final int DEFAULT_MAX_QUEUED_READS = 256;
+
+    /**
+     * The default time that a search or read may wait
+     * to execute, in milliseconds.
+     */
+    public static final long DEFAULT_MAX_WAIT = 2000;
+
+    /**
+     * The database that this class stands in front of.
+     */
+    private final CloseableDB database;
+
+    /**
+     * Limits <code>find</code>, <code>findRecords</code> and
+     * <code>findPage</code>.
+     */
+    private final OperationLimit searches;
+
+    /**
+     * Limits <code>read</code>, <code>readRecords</code>,
+     * <code>readVersioned</code> and <code>readIfModified</code>.
+     */
+    private final OperationLimit reads;
+
+    /**
+     * Class constructor.  Uses the default limits.
+     * @param database the database to limit access to.
+     */
+    public AdmissionControlledDB(CloseableDB database) {
+        this(database, DEFAULT_MAX_SEARCHES, DEFAULT_MAX_QUEUED_SEARCHES,
+                DEFAULT_MAX_READS, DEFAULT_MAX_QUEUED_READS, DEFAULT_MAX_WAIT);
+    }
+
+    /**
+     * Class constructor.
+     * @param database the database to limit access to.
+     * @param maxSearches the number of searches that may execute at once.
+     * @param maxQueuedSearches the number of searches that may wait.
+     * @param maxReads the number of reads that may execute at once.
+     * @param maxQueuedReads the number of reads that may wait.
+     * @param maxWaitMillis how long a search or read may wait.
+     * @throws IllegalArgumentException if a limit is invalid.
+     */
+    public AdmissionControlledDB(CloseableDB database, int maxSearches, int maxQueuedSearches,
+            int maxReads, int maxQueuedReads, long maxWaitMillis) {
+        this.database = database;
+        searches = new OperationLimit("search", maxSearches, maxQueuedSearches, maxWaitMillis);
+        reads = new OperationLimit("read records", maxReads, maxQueuedReads, maxWaitMillis);
+    }
+
+    @Override
+    public long getRejectedSearches() {
+        return searches.getRejectedCount();
+    }
+
+    @Override
+    public long getRejectedReads() {
+        return reads.getRejectedCount();
+    }
+
+    /**
+     * {@inheritDoc}
+     * @throws DBException if the read operation fails.
+     * @throws ServerBusyException if the read is rejected.
+     */
+    @Override
+    public String[] read(int recNo) throws RecordNotFoundException {
+        reads.acquire();
+        try {
+            return database.read(recNo);
+        } finally {
+            reads.release();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * @throws DBException if the read operation fails.
+     * @throws ServerBusyException if the read is rejected.
+     */
+    @Override
+    public Map<Integer, String[]> readRecords(int[] recNos) {
+        reads.acquire();
+        try {
+            return database.readRecords(recNos);
+        } finally {
+            reads.release();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * @throws DBException if the read operation fails.
+     * @throws ServerBusyException if the read is rejected.
+     */
+    @Override
+    public VersionedRecord readVersioned(int recNo) throws RecordNotFoundException {
+        reads.acquire();
+        try {
+            return database.readVersioned(recNo);
+        } finally {
+            reads.release();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * @throws DBException if the read operation fails.
+     * @throws ServerBusyException if the read is rejected.
+     */
+    @Override
+    public Map<Integer, VersionedRecord> readIfModified(int[] recNos, long[] versions) {
+        reads.acquire();
+        try {
+            return database.readIfModified(recNos, versions);
+        } finally {
+            reads.release();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * @throws DBException if the find operation fails.
+     * @throws ServerBusyException if the search is rejected.
+     */
+    @Override
+    public int[] find(String[] criteria) {
+        searches.acquire();
+        try {
+            return database.find(criteria);
+        } finally {
+            searches.release();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * @throws DBException if the find operation fails.
+     * @throws ServerBusyException if the search is rejected.
+     */
+    @Override
+    public Map<Integer, String[]> findRecords(String[] criteria) {
+        searches.acquire();
+        try {
+            return database.findRecords(criteria);
+        } finally {
+            searches.release();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * @throws DBException if the find operation fails.
+     * @throws ServerBusyException if the search is rejected.
+     */
+    @Override
+    public SearchPage findPage(String[] criteria, int fromRecNo, int pageSize) {
+        searches.acquire();
+        try {
+            return database.findPage(criteria, fromRecNo, pageSize);
+        } finally {
+            searches.release();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * @throws DBException if the update operation fails.
+     */
+    @Override
+    public void update(int recNo, String[] data, long lockCookie)
+            throws RecordNotFoundException, SecurityException {
+        database.update(recNo, data, lockCookie);
+    }
+
+    /**
+     * {@inheritDoc}
+     * @throws DBException if the delete operation fails.
+     */
+    @Override
+    public void delete(int recNo, long lockCookie)
+            throws RecordNotFoundException, SecurityException {
+        database.delete(recNo, lockCookie);
+    }
+
+    /**
+     * {@inheritDoc}
+     * @throws DBException if the create operation fails.
+     */
+    @Override
+    public int create(String[] data) throws DuplicateKeyException {
+        return database.create(data);
+    }
+
+    /**
+     * {@inheritDoc}
+     * @throws DBException if the create operation fails.
+     */
+    @Override
+    public int[] createRecords(String[][] data) throws DuplicateKeyException {
+        return database.createRecords(data);
+    }
+
+    @Override
+    public long lock(int recNo) throws RecordNotFoundException {
+        return database.lock(recNo);
+    }
+
+    @Override
+    public long tryLock(int recNo) throws RecordNotFoundException, LockTimeoutException {
+        return database.tryLock(recNo);
+    }
+
+    @Override
+    public long tryLock(int recNo, long timeoutMillis)
+            throws RecordNotFoundException, LockTimeoutException {
+        return database.tryLock(recNo, timeoutMillis);
+    }
+
+    /**
+     * {@inheritDoc}
+     * @throws DBException if the booking fails.
+     */
+    @Override
+    public boolean bookRecord(int recNo, String owner, long timeoutMillis)
+            throws RecordNotFoundException, SecurityException, LockTimeoutException {
+        return database.bookRecord(recNo, owner, timeoutMillis);
+    }
+
+    @Override
+    public void unlock(int recNo, long cookie) throws RecordNotFoundException,
+            SecurityException {
+        database.unlock(recNo, cookie);
+    }
+
+    @Override
+    public void addRecordChangeListener(RecordChangeListener listener) {
+        database.addRecordChangeListener(listener);
+    }
+
+    @Override
+    public void removeRecordChangeListener(RecordChangeListener listener) {
+        database.removeRecordChangeListener(listener);
+    }
+
+    @Override
+    public void closeDatabaseConnection() throws IOException {
+        database.closeDatabaseConnection();
+    }
+
+    @Override
+    public boolean hasLocalDatabaseConnection() {
+        return database.hasLocalDatabaseConnection();
+    }
+
+}
@@ -0,0 +1,592 @@
+package suncertify.network;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.Map;
+
+import suncertify.db.CloseableDB;
+import suncertify.db.DBException;
+import suncertify.db.DuplicateKeyException;
+import suncertify.db.LockTimeoutException;
+import suncertify.db.RecordChangeListener;
+import suncertify.db.RecordNotFoundException;
+import suncertify.db.SearchPage;
+import suncertify.db.SecurityException;
+import suncertify.db.VersionedRecord;
+
+/**
+ * <code>BinaryDataProxy</code> implements the <code>CloseableDB</code>
+ * interface with calls to a <code>BinaryServer</code>, over the protocol
+ * described by <code>BinaryProtocol</code>.  It is used in place of
+ * <code>DataProxy</code> where the cost of RMI serialisation matters
+ * more than being notified of changed records, which the binary
+ * protocol does not support.
+ * <p>
+ * Calls are made over a single connection, one at a time.  If the
+ * connection fails, the call throws <code>NetworkException</code> and
+ * the next call opens a new connection.
+ *
+ * @author John Harding
+ */
+public class BinaryDataProxy implements CloseableDB {
+
+    /**
+     * How long to wait for the connection to the server
+     * to be established, in milliseconds.
+     */
+    private static final int CONNECT_TIMEOUT = 10000;
+
+    /**
+     * The address of the server.
+     */
+    private final InetSocketAddress address;
+
+    /**
+     * The connection to the server, or null if there is none.
+     */
+    private Socket socket;
+
+    /**
+     * Writes requests to <code>socket</code>.
+     */
+    private DataOutputStream socketOut;
+
+    /**
+     * Reads responses from <code>socket</code>.
+     */
+    private DataInputStream socketIn;
+
+    /**
+     * Class constructor.  Connects to the server.
+     * @param hostname the name / ip address of the
+     *        machine on which the server is located.
+     * @param port the port that the binary server listens on.
+     * @throws NetworkException if the server cannot be reached.
+     */
+    public BinaryDataProxy(String hostname, int port) {
+        address = new InetSocketAddress(hostname, port);
+        try {
+            connect();
+        } catch (IOException e) {
+            throw new NetworkException("Network error", e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * @throws DBException if a database failure occurs.
+     * @throws NetworkException if a network error occurs.
+     */
+    @Override
+    public String[] read(int recNo) throws RecordNotFoundException {
+        Request request = new Request(BinaryProtocol.READ);
+        try {
+            request.out.writeInt(recNo);
+            Response response = send(request);
+            response.checkRecordFound();
+            return BinaryProtocol.readRecord(response.body());
+        } catch (IOException e) {
+            throw new NetworkException("Network error", e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * @throws DBException if a database failure occurs.
+     * @throws NetworkException if a network error occurs.
+     */
+    @Override
+    public Map<Integer, String[]> readRecords(int[] recNos) {
+        Request request = new Request(BinaryProtocol.READ_RECORDS);
+        try {
+            BinaryProtocol.writeInts(request.out, recNos);
+            return BinaryProtocol.readRecords(send(request).body());
+        } catch (IOException e) {
+            throw new NetworkException("Network error", e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * @throws DBException if a database failure occurs.
+     * @throws NetworkException if a network error occurs.
+     */
+    @Override
+    public VersionedRecord readVersioned(int recNo) throws RecordNotFoundException {
+        Request request = new Request(BinaryProtocol.READ_VERSIONED);
+        try {
+            request.out.writeInt(recNo);
+            Response response = send(request);
+            response.checkRecordFound();
+            return BinaryProtocol.readVersioned(response.body());
+        } catch (IOException e) {
+            throw new NetworkException("Network error", e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * @throws DBException if a database failure occurs.
+     * @throws NetworkException if a network error occurs.
+     */
+    @Override
+    public Map<Integer, VersionedRecord> readIfModified(int[] recNos, long[] versions) {
+        Request request = new Request(BinaryProtocol.READ_IF_MODIFIED);
+        try {
+            BinaryProtocol.writeInts(request.out, recNos);
+            BinaryProtocol.writeLongs(request.out, versions);
+            return BinaryProtocol.readVersionedRecords(send(request).body());
+        } catch (IOException e) {
+            throw new NetworkException("Network error", e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * @throws DBException if a database failure occurs.
+     * @throws NetworkException if a network error occurs.
+     */
+    @Override
+    public void update(int recNo, String[] data, long lockCookie)
+            throws RecordNotFoundException, SecurityException {
+        Request request = new Request(BinaryProtocol.UPDATE);
+        try {
+            request.out.writeInt(recNo);
+            BinaryProtocol.writeRecord(request.out, data);
+            request.out.writeLong(lockCookie);
+            Response response = send(request);
+            response.checkRecordFound();
+            response.checkSecurity();
+            response.body();
+        } catch (IOException e) {
+            throw new NetworkException("Network error", e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * @throws DBException if a database failure occurs.
+     * @throws NetworkException if a network error occurs.
+     */
+    @Override
+    public void delete(int recNo, long lockCookie)
+            throws RecordNotFoundException, SecurityException {
+        Request request = new Request(BinaryProtocol.DELETE);
+        try {
+            request.out.writeInt(recNo);
+            request.out.writeLong(lockCookie);
+            Response response = send(request);
+            response.checkRecordFound();
+            response.checkSecurity();
+            response.body();
+        } catch (IOException e) {
+            throw new NetworkException("Network error", e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * @throws DBException if a database failure occurs.
+     * @throws NetworkException if a network error occurs.
+     */
+    @Override
+    public int[] find(String[] criteria) {
+        Request request = new Request(BinaryProtocol.FIND);
+        try {
+            BinaryProtocol.writeCriteria(request.out, criteria);
+            return BinaryProtocol.readInts(send(request).body());
+        } catch (IOException e) {
+            throw new NetworkException("Network error", e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * @throws DBException if a database failure occurs.
+     * @throws NetworkException if a network error occurs.
+     */
+    @Override
+    public Map<Integer, String[]> findRecords(String[] criteria) {
+        Request request = new Request(BinaryProtocol.FIND_RECORDS);
+        try {
+            BinaryProtocol.writeCriteria(request.out, criteria);
+            return BinaryProtocol.readRecords(send(request).body());
+        } catch (IOException e) {
+            throw new NetworkException("Network error", e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * @throws DBException if a database failure occurs.
+     * @throws NetworkException if a network error occurs.
+     */
+    @Override
+    public SearchPage findPage(String[] criteria, int fromRecNo, int pageSize) {
+        Request request = new Request(BinaryProtocol.FIND_PAGE);
+        try {
+            BinaryProtocol.writeCriteria(request.out, criteria);
+            request.out.writeInt(fromRecNo);
+            request.out.writeInt(pageSize);
+            DataInputStream in = send(request).body();
+            Map<Integer, String[]> records = BinaryProtocol.readRecords(in);
+            return new SearchPage(records, in.readInt());
+        } catch (IOException e) {
+            throw new NetworkException("Network error", e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * @throws DBException if a database failure occurs.
+     * @throws NetworkException if a network error occurs.
+     */
+    @Override
+    public int create(String[] data) throws DuplicateKeyException {
+        Request request = new Request(BinaryProtocol.CREATE);
+        try {
+            BinaryProtocol.writeRecord(request.out, data);
+            Response response = send(request);
+            response.checkDuplicateKey();
+            return response.body().readInt();
+        } catch (IOException e) {
+            throw new NetworkException("Network error", e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * @throws DBException if a database failure occurs.
+     * @throws NetworkException if a network error occurs.
+     */
+    @Override
+    public int[] createRecords(String[][] data) throws DuplicateKeyException {
+        Request request = new Request(BinaryProtocol.CREATE_RECORDS);
+        try {
+            BinaryProtocol.writeRecordArray(request.out, data);
+            Response response = send(request);
+            response.checkDuplicateKey();
+            return BinaryProtocol.readInts(response.body());
+        } catch (IOException e) {
+            throw new NetworkException("Network error", e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * @throws NetworkException if a network error occurs.
+     */
+    @Override
+    public long lock(int recNo) throws RecordNotFoundException {
+        Request request = new Request(BinaryProtocol.LOCK);
+        try {
+            request.out.writeInt(recNo);
+            Response response = send(request);
+            response.checkRecordFound();
+            return response.body().readLong();
+        } catch (IOException e) {
+            throw new NetworkException("Network error", e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * @throws NetworkException if a network error occurs.
+     */
+    @Override
+    public long tryLock(int recNo) throws RecordNotFoundException, LockTimeoutException {
+        return tryLock(recNo, 0);
+    }
+
+    /**
+     * {@inheritDoc}
+     * @throws NetworkException if a network error occurs.
+     */
+    @Override
+    public long tryLock(int recNo, long timeoutMillis)
+            throws RecordNotFoundException, LockTimeoutException {
+        Request request = new Request(BinaryProtocol.TRY_LOCK);
+        try {
+            request.out.writeInt(recNo);
+            request.out.writeLong(timeoutMillis);
+            Response response = send(request);
+            response.checkRecordFound();
+            response.checkLockTimeout();
+            return response.body().readLong();
+        } catch (IOException e) {
+            throw new NetworkException("Network error", e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * @throws DBException if a database failure occurs.
+     * @throws NetworkException if a network error occurs.
+     */
+    @Override
+    public boolean bookRecord(int recNo, String owner, long timeoutMillis)
+            throws RecordNotFoundException, SecurityException, LockTimeoutException {
+        Request request = new Request(BinaryProtocol.BOOK_RECORD);
+        try {
+            request.out.writeInt(recNo);
+            BinaryProtocol.writeString(request.out, owner);
+            request.out.writeLong(timeoutMillis);
+            Response response = send(request);
+            response.checkRecordFound();
+            response.checkSecurity();
+            response.checkLockTimeout();
+            return response.body().readBoolean();
+        } catch (IOException e) {
+            throw new NetworkException("Network error", e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * @throws NetworkException if a network error occurs.
+     */
+    @Override
+    public void unlock(int recNo, long cookie) throws RecordNotFoundException,
+            SecurityException {
+        Request request = new Request(BinaryProtocol.UNLOCK);
+        try {
+            request.out.writeInt(recNo);
+            request.out.writeLong(cookie);
+            Response response = send(request);
+            response.checkRecordFound();
+            response.checkSecurity();
+            response.body();
+        } catch (IOException e) {
+            throw new NetworkException("Network error", e);
+        }
+    }
+
+    /**
+     * Not supported by the binary protocol.
+     * @param listener the listener.
+     * @throws NetworkException always, so that the caller
+     *         falls back to reading the records again.
+     */
+    @Override
+    public void addRecordChangeListener(RecordChangeListener listener) {
+        throw new NetworkException("Record change notification is not "
+                + "supported by the binary protocol", null);
+    }
+
+    /**
+     * Does nothing, since no listener can be added.
+     * @param listener the listener.
+     */
+    @Override
+    public void removeRecordChangeListener(RecordChangeListener listener) {
+    }
+
+    /**
+     * Closes the connection to the server.  The database
+     * on the server remains open.
+     * @throws IOException if the connection cannot be closed.
+     */
+    @Override
+    public synchronized void closeDatabaseConnection() throws IOException {
+        if (socket != null) {
+            Socket closing = socket;
+            socket = null;
+            closing.close();
+        }
+    }
+
+    @Override
+    public boolean hasLocalDatabaseConnection() {
+        return false;
+    }
+
+    /**
+     * Opens the connection to the server.
+     * @throws IOException if the server cannot be reached.
+     */
+    private void connect() throws IOException {
+        Socket connecting = new Socket();
+        try {
+            connecting.setTcpNoDelay(true);
+            connecting.connect(address, CONNECT_TIMEOUT);
+            socketOut = new DataOutputStream(new BufferedOutputStream(connecting.getOutputStream()));
+            socketIn = new DataInputStream(new BufferedInputStream(connecting.getInputStream()));
+        } catch (IOException e) {
+            connecting.close();
+            throw e;
+        }
+        socket = connecting;
+    }
+
+    /**
+     * Sends a request and waits for its response, opening a new
+     * connection first if there is none.  If the call fails the
+     * connection is dropped, since the next response on it could
+     * no longer be matched to its request.
+     * @param request the request.
+     * @return the response.
+     * @throws IOException if the call fails.
+     */
+    private synchronized Response send(Request request) throws IOException {
+        if (request.bytes.size() > BinaryProtocol.MAX_REQUEST_LENGTH) {
+            throw new IllegalArgumentException("Request of " + request.bytes.size()
+                    + " bytes is larger than the server accepts");
+        }
+        if (socket == null) {
+            connect();
+        }
+        try {
+            socketOut.writeInt(request.bytes.size());
+            request.bytes.writeTo(socketOut);
+            socketOut.flush();
+
+            int length = socketIn.readInt();
+            if (length < 1 || length > BinaryProtocol.MAX_FRAME_LENGTH) {
+                throw new IOException("Invalid frame length " + length);
+            }
+            byte[] frame = new byte[length];
+            socketIn.readFully(frame);
+            return new Response(frame);
+        } catch (IOException e) {
+            closeDatabaseConnection();
+            throw e;
+        }
+    }
+
+    /**
+     * A request being encoded.
+     */
+    private static class Request {
+
+        /**
+         * Holds the encoded request.
+         */
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        /**
+         * Encodes the arguments of the request.
+         */
+        private final DataOutputStream out = new DataOutputStream(bytes);
+
+        /**
+         * Class constructor.
+         * @param opcode the operation requested.
+         */
+        Request(byte opcode) {
+            bytes.write(opcode);
+        }
+    }
+
+    /**
+     * A response being decoded.  The exceptions declared by an operation
+     * are checked for first, after which <code>body</code> throws any
+     * other failure and returns the result.
+     */
+    private static class Response {
+
+        /**
+         * The status of the response.
+         */
+        private final byte status;
+
+        /**
+         * Decodes the rest of the response.
+         */
+        private final DataInputStream in;
+
+        /**
+         * Class constructor.
+         * @param frame the response frame, without its length prefix.
+         * @throws IOException if the status cannot be read.
+         */
+        Response(byte[] frame) throws IOException {
+            in = new DataInputStream(new ByteArrayInputStream(frame));
+            status = in.readByte();
+        }
+
+        /**
+         * Reads the message of a failed operation.
+         * @return the message.
+         * @throws IOException if the message cannot be read.
+         */
+        private String message() throws IOException {
+            return in.readUTF();
+        }
+
+        /**
+         * Checks whether the operation threw <code>RecordNotFoundException</code>.
+         * @throws RecordNotFoundException if it did.
+         * @throws IOException if the message cannot be read.
+         */
+        void checkRecordFound() throws RecordNotFoundException, IOException {
+            if (status == BinaryProtocol.RECORD_NOT_FOUND) {
+                throw new RecordNotFoundException(message());
+            }
+        }
+
+        /**
+         * Checks whether the operation threw <code>SecurityException</code>.
+         * @throws SecurityException if it did.
+         * @throws IOException if the message cannot be read.
+         */
+        void checkSecurity() throws SecurityException, IOException {
+            if (status == BinaryProtocol.SECURITY) {
+                throw new SecurityException(message());
+            }
+        }
+
+        /**
+         * Checks whether the operation threw <code>DuplicateKeyException</code>.
+         * @throws DuplicateKeyException if it did.
+         * @throws IOException if the message cannot be read.
+         */
+        void checkDuplicateKey() throws DuplicateKeyException, IOException {
+            if (status == BinaryProtocol.DUPLICATE_KEY) {
+                throw new DuplicateKeyException(message());
+            }
+        }
+
+        /**
+         * Checks whether the operation threw <code>LockTimeoutException</code>.
+         * @throws LockTimeoutException if it did.
+         * @throws IOException if the message cannot be read.
+         */
+        void checkLockTimeout() throws LockTimeoutException, IOException {
+            if (status == BinaryProtocol.LOCK_TIMEOUT) {
+                throw new LockTimeoutException(message());
+            }
+        }
+
+        /**
+         * Returns the result of a successful operation.
+         * @return the stream to decode the result from.
+         * @throws DBException if a database failure occurred.
+         * @throws IllegalArgumentException if the arguments were invalid.
+         * @throws ServerBusyException if the server rejected the request.
+         * @throws NetworkException if the server could not decode the request.
+         * @throws IOException if the message cannot be read.
+         */
+        DataInputStream body() throws IOException {
+            switch (status) {
+                case BinaryProtocol.OK:
+                    return in;
+                case BinaryProtocol.DATABASE_ERROR:
+                    throw new DBException(message());
+                case BinaryProtocol.INVALID_ARGUMENT:
+                    throw new IllegalArgumentException(message());
+                case BinaryProtocol.SERVER_BUSY:
+                    throw new ServerBusyException(message());
+                default:
+                    throw new NetworkException("Bad request: " + message(), null);
+            }
+        }
+    }
+
+}
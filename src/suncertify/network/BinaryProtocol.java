@@ -0,0 +1,367 @@
+package suncertify.network;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import suncertify.db.DBAccessor;
+import suncertify.db.VersionedRecord;
+
+/**
+ * The constants and encodings of the binary protocol spoken between
+ * <code>BinaryServer</code> and <code>BinaryDataProxy</code>.
+ * <p>
+ * Every request and every response is a frame: a four byte length
+ * followed by that many bytes.  A request frame starts with an opcode
+ * and a response frame starts with a status, each followed by the
+ * arguments or the result of the operation.  A response with a status
+ * other than <code>OK</code> carries only the message of the exception.
+ * Records are sent as the <code>DBAccessor.RECORD_DATA_LENGTH</code>
+ * bytes of their data section, exactly as they are laid out in the
+ * database file.  A connection carries one request at a time.
+ *
+ * @author John Harding
+ */
+final class BinaryProtocol {
+
+    /**
+     * The largest response frame that is accepted, in bytes.  Large
+     * enough for the result of a search that matches a large file.
+     */
+    static final int MAX_FRAME_LENGTH = 64 * 1024 * 1024;
+
+    /**
+     * The largest request frame that is accepted, in bytes.  Large enough
+     * for <code>createRecords</code> with more than twenty thousand records,
+     * and far smaller than <code>MAX_FRAME_LENGTH</code>, so that a client
+     * cannot make the server set aside much memory for one request.
+     */
+    static final int MAX_REQUEST_LENGTH = 4 * 1024 * 1024;
+
+    /**
+     * The length in bytes of the length prefix of a frame.
+     */
+    static final int LENGTH_PREFIX = 4;
+
+    /* Opcodes. */
+
+    /** <code>read(int)</code>. */
+    static final byte READ = 1;
+    /** <code>readRecords(int[])</code>. */
+    static final byte READ_RECORDS = 2;
+    /** <code>readVersioned(int)</code>. */
+    static final byte READ_VERSIONED = 3;
+    /** <code>readIfModified(int[], long[])</code>. */
+    static final byte READ_IF_MODIFIED = 4;
+    /** <code>update(int, String[], long)</code>. */
+    static final byte UPDATE = 5;
+    /** <code>delete(int, long)</code>. */
+    static final byte DELETE = 6;
+    /** <code>find(String[])</code>. */
+    static final byte FIND = 7;
+    /** <code>findRecords(String[])</code>. */
+    static final byte FIND_RECORDS = 8;
+    /** <code>findPage(String[], int, int)</code>. */
+    static final byte FIND_PAGE = 9;
+    /** <code>create(String[])</code>. */
+    static final byte CREATE = 10;
+    /** <code>createRecords(String[][])</code>. */
+    static final byte CREATE_RECORDS = 11;
+    /** <code>lock(int)</code>. */
+    static final byte LOCK = 12;
+    /** <code>tryLock(int, long)</code>. */
+    static final byte TRY_LOCK = 13;
+    /** <code>unlock(int, long)</code>. */
+    static final byte UNLOCK = 14;
+    /** <code>bookRecord(int, String, long)</code>. */
+    static final byte BOOK_RECORD = 15;
+
+    /* Statuses. */
+
+    /** The operation succeeded. */
+    static final byte OK = 0;
+    /** The operation threw <code>RecordNotFoundException</code>. */
+    static final byte RECORD_NOT_FOUND = 1;
+    /** The operation threw <code>SecurityException</code>. */
+    static final byte SECURITY = 2;
+    /** The operation threw <code>DuplicateKeyException</code>. */
+    static final byte DUPLICATE_KEY = 3;
+    /** The operation threw <code>LockTimeoutException</code>. */
+    static final byte LOCK_TIMEOUT = 4;
+    /** The operation threw <code>DBException</code>. */
+    static final byte DATABASE_ERROR = 5;
+    /** The request could not be decoded. */
+    static final byte BAD_REQUEST = 6;
+    /** The operation threw <code>IllegalArgumentException</code>. */
+    static final byte INVALID_ARGUMENT = 7;
+    /** The operation was rejected with <code>ServerBusyException</code>. */
+    static final byte SERVER_BUSY = 8;
+
+    /**
+     * Not instantiable.
+     */
+    private BinaryProtocol() {
+    }
+
+    /**
+     * Reads the number of elements that follow, each of which takes at
+     * least <code>elementLength</code> bytes.  Frames are read fully before
+     * they are decoded, so a count that the rest of the frame cannot hold
+     * is rejected before anything is allocated for it.
+     * @param in the stream to read from, which holds the rest of the frame.
+     * @param elementLength the least number of bytes taken by an element.
+     * @return the number of elements.
+     * @throws IOException if the count cannot be read or is invalid.
+     */
+    static int readCount(DataInputStream in, int elementLength) throws IOException {
+        int count = in.readInt();
+        if (count < 0 || (long) count * elementLength > in.available()) {
+            throw new IOException("Invalid element count " + count);
+        }
+        return count;
+    }
+
+    /**
+     * Writes a string that may be null.
+     * @param out the stream to write to.
+     * @param value the string.
+     * @throws IOException if the string cannot be written.
+     */
+    static void writeString(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    /**
+     * Reads a string written by <code>writeString</code>.
+     * @param in the stream to read from.
+     * @return the string, which may be null.
+     * @throws IOException if the string cannot be read.
+     */
+    static String readString(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    /**
+     * Writes search criteria, which may contain nulls.
+     * @param out the stream to write to.
+     * @param criteria the criteria.
+     * @throws IOException if the criteria cannot be written.
+     */
+    static void writeCriteria(DataOutputStream out, String[] criteria) throws IOException {
+        out.writeInt(criteria.length);
+        for (String criterion : criteria) {
+            writeString(out, criterion);
+        }
+    }
+
+    /**
+     * Reads search criteria written by <code>writeCriteria</code>.
+     * @param in the stream to read from.
+     * @return the criteria.
+     * @throws IOException if the criteria cannot be read.
+     */
+    static String[] readCriteria(DataInputStream in) throws IOException {
+        String[] criteria = new String[readCount(in, 1)];
+        for (int i = 0; i < criteria.length; i++) {
+            criteria[i] = readString(in);
+        }
+        return criteria;
+    }
+
+    /**
+     * Writes the fields of a record as its data section.
+     * @param out the stream to write to.
+     * @param data the fields of the record.
+     * @throws IOException if the record cannot be written.
+     */
+    static void writeRecord(DataOutputStream out, String[] data) throws IOException {
+        out.write(DBAccessor.encodeRecordData(data));
+    }
+
+    /**
+     * Reads the fields of a record from its data section.
+     * @param in the stream to read from.
+     * @return the fields of the record.
+     * @throws IOException if the record cannot be read.
+     */
+    static String[] readRecord(DataInputStream in) throws IOException {
+        byte[] record = new byte[DBAccessor.RECORD_DATA_LENGTH];
+        in.readFully(record);
+        return DBAccessor.decodeRecordData(record, 0);
+    }
+
+    /**
+     * Writes records mapped by their numbers.
+     * @param out the stream to write to.
+     * @param records the numbers of the records mapped to their fields.
+     * @throws IOException if the records cannot be written.
+     */
+    static void writeRecords(DataOutputStream out, Map<Integer, String[]> records) throws IOException {
+        out.writeInt(records.size());
+        for (Map.Entry<Integer, String[]> entry : records.entrySet()) {
+            out.writeInt(entry.getKey());
+            writeRecord(out, entry.getValue());
+        }
+    }
+
+    /**
+     * Reads records written by <code>writeRecords</code>,
+     * in the order in which they were written.
+     * @param in the stream to read from.
+     * @return the numbers of the records mapped to their fields.
+     * @throws IOException if the records cannot be read.
+     */
+    static Map<Integer, String[]> readRecords(DataInputStream in) throws IOException {
+        int count = readCount(in, 4 + DBAccessor.RECORD_DATA_LENGTH);
+        Map<Integer, String[]> records = new LinkedHashMap<Integer, String[]>();
+        for (int i = 0; i < count; i++) {
+            int recNo = in.readInt();
+            records.put(recNo, readRecord(in));
+        }
+        return records;
+    }
+
+    /**
+     * Writes an array of records.
+     * @param out the stream to write to.
+     * @param data the fields of each record.
+     * @throws IOException if the records cannot be written.
+     */
+    static void writeRecordArray(DataOutputStream out, String[][] data) throws IOException {
+        out.writeInt(data.length);
+        for (String[] record : data) {
+            writeRecord(out, record);
+        }
+    }
+
+    /**
+     * Reads an array written by <code>writeRecordArray</code>.
+     * @param in the stream to read from.
+     * @return the fields of each record.
+     * @throws IOException if the records cannot be read.
+     */
+    static String[][] readRecordArray(DataInputStream in) throws IOException {
+        String[][] data = new String[readCount(in, DBAccessor.RECORD_DATA_LENGTH)][];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = readRecord(in);
+        }
+        return data;
+    }
+
+    /**
+     * Writes a record with its version.
+     * @param out the stream to write to.
+     * @param record the record.
+     * @throws IOException if the record cannot be written.
+     */
+    static void writeVersioned(DataOutputStream out, VersionedRecord record) throws IOException {
+        out.writeLong(record.getVersion());
+        out.writeBoolean(record.isDeleted());
+        if (!record.isDeleted()) {
+            writeRecord(out, record.getData());
+        }
+    }
+
+    /**
+     * Reads a record written by <code>writeVersioned</code>.
+     * @param in the stream to read from.
+     * @return the record.
+     * @throws IOException if the record cannot be read.
+     */
+    static VersionedRecord readVersioned(DataInputStream in) throws IOException {
+        long version = in.readLong();
+        String[] data = in.readBoolean() ? null : readRecord(in);
+        return new VersionedRecord(data, version);
+    }
+
+    /**
+     * Writes records with their versions, mapped by their numbers.
+     * @param out the stream to write to.
+     * @param records the numbers of the records mapped to the records.
+     * @throws IOException if the records cannot be written.
+     */
+    static void writeVersionedRecords(DataOutputStream out, Map<Integer, VersionedRecord> records)
+            throws IOException {
+        out.writeInt(records.size());
+        for (Map.Entry<Integer, VersionedRecord> entry : records.entrySet()) {
+            out.writeInt(entry.getKey());
+            writeVersioned(out, entry.getValue());
+        }
+    }
+
+    /**
+     * Reads records written by <code>writeVersionedRecords</code>.
+     * @param in the stream to read from.
+     * @return the numbers of the records mapped to the records.
+     * @throws IOException if the records cannot be read.
+     */
+    static Map<Integer, VersionedRecord> readVersionedRecords(DataInputStream in) throws IOException {
+        int count = readCount(in, 13);
+        Map<Integer, VersionedRecord> records = new LinkedHashMap<Integer, VersionedRecord>();
+        for (int i = 0; i < count; i++) {
+            int recNo = in.readInt();
+            records.put(recNo, readVersioned(in));
+        }
+        return records;
+    }
+
+    /**
+     * Writes an array of record numbers.
+     * @param out the stream to write to.
+     * @param values the record numbers.
+     * @throws IOException if the array cannot be written.
+     */
+    static void writeInts(DataOutputStream out, int[] values) throws IOException {
+        out.writeInt(values.length);
+        for (int value : values) {
+            out.writeInt(value);
+        }
+    }
+
+    /**
+     * Reads an array written by <code>writeInts</code>.
+     * @param in the stream to read from.
+     * @return the record numbers.
+     * @throws IOException if the array cannot be read.
+     */
+    static int[] readInts(DataInputStream in) throws IOException {
+        int[] values = new int[readCount(in, 4)];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = in.readInt();
+        }
+        return values;
+    }
+
+    /**
+     * Writes an array of versions.
+     * @param out the stream to write to.
+     * @param values the versions.
+     * @throws IOException if the array cannot be written.
+     */
+    static void writeLongs(DataOutputStream out, long[] values) throws IOException {
+        out.writeInt(values.length);
+        for (long value : values) {
+            out.writeLong(value);
+        }
+    }
+
+    /**
+     * Reads an array written by <code>writeLongs</code>.
+     * @param in the stream to read from.
+     * @return the versions.
+     * @throws IOException if the array cannot be read.
+     */
+    static long[] readLongs(DataInputStream in) throws IOException {
+        long[] values = new long[readCount(in, 8)];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = in.readLong();
+        }
+        return values;
+    }
+
+}
@@ -0,0 +1,580 @@
+package suncertify.network;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.BindException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import suncertify.application.Utils;
+import suncertify.db.CloseableDB;
+import suncertify.db.DBException;
+import suncertify.db.DuplicateKeyException;
+import suncertify.db.LockTimeoutException;
+import suncertify.db.RecordNotFoundException;
+import suncertify.db.SearchPage;
+import suncertify.db.SecurityException;
+
+/**
+ * <code>BinaryServer</code> serves a <code>CloseableDB</code> to
+ * <code>BinaryDataProxy</code> clients over the protocol described by
+ * <code>BinaryProtocol</code>.  It is an alternative to RMI for clients
+ * that do not need to be notified of changed records.
+ * <p>
+ * A single selector thread accepts connections, reads request frames and
+ * writes response frames, without blocking on any one client.  Once a
+ * request has been read the connection stops reading, and the request
+ * is executed by a worker thread, of the kind given by a
+ * <code>RequestExecutorMode</code>, since operations such as
+ * <code>lock</code> may wait.  The worker queues the response for the
+ * selector thread to write, after which the connection reads again.
+ * <p>
+ * Requests that may wait for a record lock are executed by workers of
+ * their own, so that however many of them are waiting, the
+ * <code>unlock</code> that they wait for is never queued behind them
+ * when the number of workers is bounded.
+ *
+ * @author John Harding
+ */
+public class BinaryServer implements Runnable {
+
+    /**
+     * Logger for the BinaryServer class.
+     */
+    private static Logger log = Logger.getLogger(BinaryServer.class.getName());
+
+    /**
+     * The database that requests are executed against.
+     */
+    private final CloseableDB database;
+
+    /**
+     * The channel on which connections are accepted.
+     */
+    private final ServerSocketChannel serverChannel;
+
+    /**
+     * The selector that the channels are registered with.
+     */
+    private final Selector selector;
+
+    /**
+     * Executes requests that may wait for a record lock:
+     * <code>lock</code>, <code>tryLock</code> and <code>bookRecord</code>.
+     */
+    private final ExecutorService lockWorkers;
+
+    /**
+     * Executes every other request.  None of them waits for a lock.
+     */
+    private final ExecutorService workers;
+
+    /**
+     * Connections with a response waiting to be written.
+     */
+    private final Queue<Connection> responses = new ConcurrentLinkedQueue<Connection>();
+
+    /**
+     * The selector thread.
+     */
+    private final Thread selectorThread;
+
+    /**
+     * How long <code>close</code> waits for the selector
+     * thread to stop, in milliseconds.
+     */
+    private static final long CLOSE_TIMEOUT = 1000;
+
+    /**
+     * The size in bytes of the buffer that a request is first read into.
+     * The buffer is doubled as the bytes of a larger request arrive, up to
+     * the length of the request, so that a connection that sends only a
+     * length prefix holds no more than this.
+     */
+    private static final int INITIAL_REQUEST_BUFFER = 8192;
+
+    /**
+     * Whether the server has been closed.
+     */
+    private volatile boolean closed;
+
+    /**
+     * Class constructor.  The server listens on <code>port</code>
+     * once it has been started, and executes requests on
+     * <code>RequestExecutorMode.PLATFORM</code> threads.
+     * @param database the database to serve.
+     * @param port the port to listen on.
+     * @throws NetworkException if the server cannot listen on the port.
+     */
+    public BinaryServer(CloseableDB database, int port) {
+        this(database, port, RequestExecutorMode.PLATFORM, RequestExecutorMode.DEFAULT_MAX_THREADS);
+    }
+
+    /**
+     * Class constructor.  The server listens on <code>port</code>
+     * once it has been started.
+     * @param database the database to serve.
+     * @param port the port to listen on.
+     * @param executorMode the kind of thread to execute requests on.
+     * @param maxThreads the maximum number of threads to execute requests
+     *        that may wait for a lock on, and separately every other
+     *        request on, if <code>executorMode</code> is bounded.
+     * @throws NetworkException if the server cannot listen on the port.
+     * @throws IllegalArgumentException if <code>maxThreads</code>
+     *         is less than one.
+     */
+    public BinaryServer(CloseableDB database, int port, 
+            RequestExecutorMode executorMode, int maxThreads) {
+        Utils.setLogLevel(log, Level.INFO);
+        this.database = database;
+        lockWorkers = executorMode.newExecutor("BinaryServer-lock-worker", maxThreads);
+        workers = executorMode.newExecutor("BinaryServer-worker", maxThreads);
+        try {
+            selector = Selector.open();
+            serverChannel = ServerSocketChannel.open();
+            serverChannel.bind(new InetSocketAddress(port));
+            serverChannel.configureBlocking(false);
+            serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+        } catch (BindException e) {
+            log.throwing("BinaryServer.java", "BinaryServer", e);
+            lockWorkers.shutdown();
+            workers.shutdown();
+            throw new NetworkException("Port " + port + " is already in use", e);
+        } catch (IOException e) {
+            log.throwing("BinaryServer.java", "BinaryServer", e);
+            lockWorkers.shutdown();
+            workers.shutdown();
+            throw new NetworkException("Server error", e);
+        }
+        selectorThread = new Thread(this, "BinaryServer-selector");
+        selectorThread.setDaemon(true);
+    }
+
+    /**
+     * Starts the selector thread.
+     */
+    public void start() {
+        selectorThread.start();
+    }
+
+    /**
+     * Stops accepting connections and closes every connection, once the
+     * selector thread has stopped.  The database is not closed.
+     */
+    public void close() {
+        closed = true;
+        selector.wakeup();
+        try {
+            selectorThread.join(CLOSE_TIMEOUT);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            for (SelectionKey key : selector.keys()) {
+                key.channel().close();
+            }
+            selector.close();
+        } catch (IOException e) {
+            /**
+             * The server is going away, so a channel
+             * that fails to close is of no consequence.
+             */
+            log.throwing("BinaryServer.java", "close", e);
+        }
+        lockWorkers.shutdownNow();
+        workers.shutdownNow();
+    }
+
+    /**
+     * The selector loop.
+     */
+    @Override
+    public void run() {
+        try {
+            while (!closed) {
+                selector.select();
+                Connection connection;
+                while ((connection = responses.poll()) != null) {
+                    connection.startWriting();
+                }
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    handleKey(key);
+                }
+            }
+        } catch (IOException e) {
+            if (!closed) {
+                log.log(Level.SEVERE, "Binary server stopped", e);
+            }
+        }
+    }
+
+    /**
+     * Accepts, reads or writes as the key is ready to.
+     * A connection that fails is closed.
+     * @param key the selected key.
+     */
+    private void handleKey(SelectionKey key) {
+        if (!key.isValid()) {
+            return;
+        }
+        try {
+            if (key.isAcceptable()) {
+                accept();
+            }
+            else if (key.isReadable()) {
+                ((Connection) key.attachment()).read();
+            }
+            else if (key.isWritable()) {
+                ((Connection) key.attachment()).write();
+            }
+        } catch (IOException e) {
+            if (log.isLoggable(Level.FINER)) {
+                log.finer("Closing binary connection: " + e.getMessage());
+            }
+            if (key.channel() != serverChannel) {
+                closeChannel(key);
+            }
+        } catch (RuntimeException e) {
+            /**
+             * Such as RejectedExecutionException while the server closes.
+             * Only this connection is dropped, so that one failure does
+             * not end the selector loop for every client.
+             */
+            log.log(Level.WARNING, "Closing binary connection after an unexpected error", e);
+            if (key.channel() != serverChannel) {
+                closeChannel(key);
+            }
+        }
+    }
+
+    /**
+     * Accepts a connection and starts reading from it.
+     * @throws IOException if the connection cannot be accepted.
+     */
+    private void accept() throws IOException {
+        SocketChannel channel = serverChannel.accept();
+        if (channel != null) {
+            channel.configureBlocking(false);
+            channel.socket().setTcpNoDelay(true);
+            SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+            key.attach(new Connection(key, channel));
+        }
+    }
+
+    /**
+     * Closes the channel of a connection.
+     * @param key the key of the channel.
+     */
+    private void closeChannel(SelectionKey key) {
+        key.cancel();
+        try {
+            key.channel().close();
+        } catch (IOException e) {
+            /**
+             * The connection is being dropped anyway.
+             */
+            log.throwing("BinaryServer.java", "closeChannel", e);
+        }
+    }
+
+    /**
+     * Returns the executor for a request.
+     * @param opcode the operation requested.
+     * @return <code>lockWorkers</code> if the operation may
+     *         wait for a record lock, otherwise <code>workers</code>.
+     */
+    private ExecutorService executorFor(byte opcode) {
+        switch (opcode) {
+            case BinaryProtocol.LOCK:
+            case BinaryProtocol.TRY_LOCK:
+            case BinaryProtocol.BOOK_RECORD:
+                return lockWorkers;
+            default:
+                return workers;
+        }
+    }
+
+    /**
+     * Executes a request and encodes the response.
+     * @param request the request frame, without its length prefix.
+     * @return the response frame, with its length prefix, ready to write.
+     */
+    private ByteBuffer execute(byte[] request) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        byte status = BinaryProtocol.OK;
+        String message = null;
+        try {
+            out.writeByte(BinaryProtocol.OK);
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(request));
+            dispatch(in.readByte(), in, out);
+        } catch (RecordNotFoundException e) {
+            status = BinaryProtocol.RECORD_NOT_FOUND;
+            message = e.getMessage();
+        } catch (SecurityException e) {
+            status = BinaryProtocol.SECURITY;
+            message = e.getMessage();
+        } catch (DuplicateKeyException e) {
+            status = BinaryProtocol.DUPLICATE_KEY;
+            message = e.getMessage();
+        } catch (LockTimeoutException e) {
+            status = BinaryProtocol.LOCK_TIMEOUT;
+            message = e.getMessage();
+        } catch (DBException e) {
+            log.log(Level.WARNING, "Database error", e);
+            status = BinaryProtocol.DATABASE_ERROR;
+            message = e.getMessage();
+        } catch (ServerBusyException e) {
+            status = BinaryProtocol.SERVER_BUSY;
+            message = e.getMessage();
+        } catch (IllegalArgumentException e) {
+            status = BinaryProtocol.INVALID_ARGUMENT;
+            message = e.getMessage();
+        } catch (IOException | RuntimeException e) {
+            status = BinaryProtocol.BAD_REQUEST;
+            message = e.toString();
+        }
+        if (status != BinaryProtocol.OK) {
+            bytes.reset();
+            try {
+                out.writeByte(status);
+                out.writeUTF(message == null ? "" : message);
+            } catch (IOException e) {
+                /**
+                 * Writing to a ByteArrayOutputStream cannot fail.
+                 */
+                throw new IllegalStateException(e);
+            }
+        }
+        ByteBuffer response = ByteBuffer.allocate(BinaryProtocol.LENGTH_PREFIX + bytes.size());
+        response.putInt(bytes.size());
+        response.put(bytes.toByteArray());
+        response.flip();
+        return response;
+    }
+
+    /**
+     * Decodes the arguments of a request, calls the corresponding
+     * method of <code>database</code> and encodes its result.
+     * @param opcode the operation requested.
+     * @param in the arguments of the request.
+     * @param out the stream to write the result to.
+     * @throws IOException if the request cannot be decoded.
+     * @throws RecordNotFoundException if the operation throws it.
+     * @throws SecurityException if the operation throws it.
+     * @throws DuplicateKeyException if the operation throws it.
+     * @throws LockTimeoutException if the operation throws it.
+     */
+    private void dispatch(byte opcode, DataInputStream in, DataOutputStream out)
+            throws IOException, RecordNotFoundException, SecurityException,
+            DuplicateKeyException, LockTimeoutException {
+
+        switch (opcode) {
+            case BinaryProtocol.READ:
+                BinaryProtocol.writeRecord(out, database.read(in.readInt()));
+                break;
+            case BinaryProtocol.READ_RECORDS:
+                BinaryProtocol.writeRecords(out, database.readRecords(BinaryProtocol.readInts(in)));
+                break;
+            case BinaryProtocol.READ_VERSIONED:
+                BinaryProtocol.writeVersioned(out, database.readVersioned(in.readInt()));
+                break;
+            case BinaryProtocol.READ_IF_MODIFIED: {
+                int[] recNos = BinaryProtocol.readInts(in);
+                long[] versions = BinaryProtocol.readLongs(in);
+                BinaryProtocol.writeVersionedRecords(out, database.readIfModified(recNos, versions));
+                break;
+            }
+            case BinaryProtocol.UPDATE: {
+                int recNo = in.readInt();
+                String[] data = BinaryProtocol.readRecord(in);
+                database.update(recNo, data, in.readLong());
+                break;
+            }
+            case BinaryProtocol.DELETE: {
+                int recNo = in.readInt();
+                database.delete(recNo, in.readLong());
+                break;
+            }
+            case BinaryProtocol.FIND:
+                BinaryProtocol.writeInts(out, database.find(BinaryProtocol.readCriteria(in)));
+                break;
+            case BinaryProtocol.FIND_RECORDS:
+                BinaryProtocol.writeRecords(out, database.findRecords(BinaryProtocol.readCriteria(in)));
+                break;
+            case BinaryProtocol.FIND_PAGE: {
+                String[] criteria = BinaryProtocol.readCriteria(in);
+                int fromRecNo = in.readInt();
+                SearchPage page = database.findPage(criteria, fromRecNo, in.readInt());
+                BinaryProtocol.writeRecords(out, page.getRecords());
+                out.writeInt(page.getNextRecNo());
+                break;
+            }
+            case BinaryProtocol.CREATE:
+                out.writeInt(database.create(BinaryProtocol.readRecord(in)));
+                break;
+            case BinaryProtocol.CREATE_RECORDS:
+                BinaryProtocol.writeInts(out, database.createRecords(BinaryProtocol.readRecordArray(in)));
+                break;
+            case BinaryProtocol.LOCK:
+                out.writeLong(database.lock(in.readInt()));
+                break;
+            case BinaryProtocol.TRY_LOCK: {
+                int recNo = in.readInt();
+                out.writeLong(database.tryLock(recNo, in.readLong()));
+                break;
+            }
+            case BinaryProtocol.UNLOCK: {
+                int recNo = in.readInt();
+                database.unlock(recNo, in.readLong());
+                break;
+            }
+            case BinaryProtocol.BOOK_RECORD: {
+                int recNo = in.readInt();
+                String owner = BinaryProtocol.readString(in);
+                out.writeBoolean(database.bookRecord(recNo, owner, in.readLong()));
+                break;
+            }
+            default:
+                throw new IOException("Unknown opcode " + opcode);
+        }
+    }
+
+    /**
+     * The state of a client connection.  Its fields are used by the
+     * selector thread only, apart from <code>response</code>, which is
+     * set by a worker thread before the connection is queued on
+     * <code>responses</code>.
+     */
+    private class Connection {
+
+        /**
+         * The key of the channel.
+         */
+        private final SelectionKey key;
+
+        /**
+         * The channel to the client.
+         */
+        private final SocketChannel channel;
+
+        /**
+         * Receives the length prefix of the next request.
+         */
+        private final ByteBuffer lengthPrefix = ByteBuffer.allocate(BinaryProtocol.LENGTH_PREFIX);
+
+        /**
+         * Receives the request once its length is known, otherwise null.
+         */
+        private ByteBuffer request;
+
+        /**
+         * The length of the request being received.
+         */
+        private int requestLength;
+
+        /**
+         * The response being written, otherwise null.
+         */
+        private volatile ByteBuffer response;
+
+        /**
+         * Class constructor.
+         * @param key the key of the channel.
+         * @param channel the channel to the client.
+         */
+        Connection(SelectionKey key, SocketChannel channel) {
+            this.key = key;
+            this.channel = channel;
+        }
+
+        /**
+         * Reads as much of the current request as is available, growing
+         * the buffer of a large request only as its bytes arrive.  Once
+         * the whole request has been read, reading stops and the request
+         * is passed to a worker.
+         * @throws IOException if the client has closed the connection,
+         *         or sends a frame of an invalid length.
+         */
+        void read() throws IOException {
+            if (request == null) {
+                if (channel.read(lengthPrefix) < 0) {
+                    throw new IOException("Connection closed by client");
+                }
+                if (lengthPrefix.hasRemaining()) {
+                    return;
+                }
+                lengthPrefix.flip();
+                int length = lengthPrefix.getInt();
+                lengthPrefix.clear();
+                if (length < 1 || length > BinaryProtocol.MAX_REQUEST_LENGTH) {
+                    throw new IOException("Invalid frame length " + length);
+                }
+                requestLength = length;
+                request = ByteBuffer.allocate(Math.min(length, INITIAL_REQUEST_BUFFER));
+            }
+            if (!request.hasRemaining()) {
+                ByteBuffer larger = ByteBuffer.allocate(Math.min(requestLength, request.capacity() * 2));
+                request.flip();
+                larger.put(request);
+                request = larger;
+            }
+            if (channel.read(request) < 0) {
+                throw new IOException("Connection closed by client");
+            }
+            if (request.position() < requestLength) {
+                return;
+            }
+            final byte[] frame = request.array();
+            request = null;
+            key.interestOps(0);
+            executorFor(frame[0]).execute(new Runnable() {
+                @Override
+                public void run() {
+                    response = execute(frame);
+                    responses.add(Connection.this);
+                    selector.wakeup();
+                }
+            });
+        }
+
+        /**
+         * Starts writing the response, once a worker has queued it.
+         */
+        void startWriting() {
+            if (key.isValid()) {
+                key.interestOps(SelectionKey.OP_WRITE);
+            }
+        }
+
+        /**
+         * Writes as much of the response as the channel accepts.
+         * Once the whole response has been written, reading resumes.
+         * @throws IOException if the response cannot be written.
+         */
+        void write() throws IOException {
+            channel.write(response);
+            if (!response.hasRemaining()) {
+                response = null;
+                key.interestOps(SelectionKey.OP_READ);
+            }
+        }
+    }
+
+}
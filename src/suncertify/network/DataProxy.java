@@ -1,13 +1,28 @@
 package suncertify.network;
 
 import java.io.IOException;
+import java.rmi.NoSuchObjectException;
 import java.rmi.RemoteException;
+import java.rmi.server.UnicastRemoteObject;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
 
 import suncertify.db.CloseableDB;
 import suncertify.db.DBException;
 import suncertify.db.DuplicateKeyException;
+import suncertify.db.LockTimeoutException;
+import suncertify.db.RecordChangeListener;
 import suncertify.db.RecordNotFoundException;
+import suncertify.db.SearchPage;
 import suncertify.db.SecurityException;
+import suncertify.db.VersionedRecord;
 
 /**
  * <code>DataProxy</code> adapts an instance of 
@@ -19,6 +34,21 @@ import suncertify.db.SecurityException;
  * is therefore unconcerned about whether the database 
  * connection is local, or provided by a remote database server
  * application.
+ * <p>
+ * While any <code>RecordChangeListener</code> is registered, a
+ * <code>RecordChangeCallback</code> is exported and registered with
+ * the server, and passes each changed record on to the listeners.
+ * <p>
+ * Records that are read are cached with their version.  A cached record
+ * is returned without a remote call until it is older than 
+ * <code>CACHE_VALIDITY</code>.  The next read of such a record validates
+ * every cached record that has reached that age in a single call, which
+ * returns only the records whose version has changed.  Records changed
+ * through this proxy, or notified by the server as changed, are removed
+ * from the cache.  A record that this proxy holds the lock on is always
+ * read from the server, so that a record read between <code>lock</code>
+ * and <code>update</code> is never older than the last committed update.
+ * At most <code>MAX_CACHED_RECORDS</code> records are cached.
  *
  * @author John Harding
  */
@@ -30,6 +60,42 @@ public class DataProxy implements CloseableDB {
      */
 	private DataRemoteAdapter database;
 	
+	/**
+	 * The time in milliseconds for which a cached record is 
+	 * returned without being validated.
+	 */
+	private static final long CACHE_VALIDITY = 2000;
+	
+	/**
+	 * The most records that are cached at once.
+	 */
+	private static final int MAX_CACHED_RECORDS = 1000;
+	
+	/**
+	 * Maps record numbers to the cached copy of the record.
+	 */
+	private final ConcurrentMap<Integer, CachedRecord> recordCache 
+			= new ConcurrentHashMap<Integer, CachedRecord>();
+	
+	/**
+	 * Maps the numbers of the records that this proxy holds locks on
+	 * to their lock cookies.
+	 */
+	private final ConcurrentMap<Integer, Long> heldLocks 
+			= new ConcurrentHashMap<Integer, Long>();
+	
+	/**
+	 * The listeners notified of changed records.
+	 */
+	private final List<RecordChangeListener> listeners 
+			= new CopyOnWriteArrayList<RecordChangeListener>();
+	
+	/**
+	 * The callback registered with the server, or null
+	 * if no listener is registered.
+	 */
+	private RecordChangeCallback callback;
+	
 	/**
 	 * Class constructor.
 	 * @param database the <code>DataRemoteAdapter</code>
@@ -46,13 +112,111 @@ public class DataProxy implements CloseableDB {
 	 */
 	@Override
 	public String[] read(int recNo) throws RecordNotFoundException {
-		String[] result;
 		try {
-			result = database.read(recNo);
+			CachedRecord cached = heldLocks.containsKey(recNo) ? null : recordCache.get(recNo);
+			if (cached != null && cached.isExpired()) {
+				validateCache();
+				cached = recordCache.get(recNo);
+			}
+			if (cached == null) {
+				cached = new CachedRecord(recNo, database.readVersioned(recNo));
+				cache(cached);
+			}
+			return cached.record.getData().clone();
 		} catch (RemoteException e) {
 			throw new NetworkException("Network error", e);
 		}
-		return result;
+	}
+	
+	/**
+	 * {@inheritDoc}  Records that are cached and have not yet expired,
+	 * and are not locked by this proxy, are not requested from the server.
+	 * @throws DBException if a database failure occurs.
+	 * @throws NetworkException if a network error occurs.
+	 */
+	@Override
+	public Map<Integer, String[]> readRecords(int[] recNos) {
+		Map<Integer, String[]> records = new TreeMap<Integer, String[]>();
+		List<Integer> uncached = new ArrayList<Integer>();
+		for (int recNo : recNos) {
+			CachedRecord cached = heldLocks.containsKey(recNo) ? null : recordCache.get(recNo);
+			if (cached != null && !cached.isExpired()) {
+				records.put(recNo, cached.record.getData().clone());
+			}
+			else {
+				uncached.add(recNo);
+			}
+		}
+		if (!uncached.isEmpty()) {
+			int[] remaining = new int[uncached.size()];
+			for (int i = 0; i < remaining.length; i++) {
+				remaining[i] = uncached.get(i);
+			}
+			try {
+				records.putAll(database.readRecords(remaining));
+			} catch (RemoteException e) {
+				throw new NetworkException("Network error", e);
+			}
+		}
+		return new LinkedHashMap<Integer, String[]>(records);
+	}
+	
+	/**
+	 * Caches a record.  If the cache is full, the records that must be
+	 * validated before they are returned are removed first, and if that
+	 * is not enough the cache is emptied, so that it cannot grow without
+	 * bound however many records are read.
+	 * @param cached the record to cache.
+	 */
+	private void cache(CachedRecord cached) {
+		if (recordCache.size() >= MAX_CACHED_RECORDS) {
+			for (CachedRecord old : recordCache.values()) {
+				if (old.isExpired()) {
+					recordCache.remove(old.recNo, old);
+				}
+			}
+			if (recordCache.size() >= MAX_CACHED_RECORDS) {
+				recordCache.clear();
+			}
+		}
+		recordCache.put(cached.recNo, cached);
+	}
+	
+	/**
+	 * Validates the cached records that are older than 
+	 * <code>CACHE_VALIDITY</code> in a single remote call.  Records
+	 * that are unchanged are kept, changed records are replaced and
+	 * deleted records are removed.
+	 * @throws RemoteException if a network error occurs.
+	 */
+	private void validateCache() throws RemoteException {
+		List<CachedRecord> expired = new ArrayList<CachedRecord>();
+		for (CachedRecord cached : recordCache.values()) {
+			if (cached.isExpired()) {
+				expired.add(cached);
+			}
+		}
+		int[] recNos = new int[expired.size()];
+		long[] versions = new long[expired.size()];
+		for (int i = 0; i < recNos.length; i++) {
+			recNos[i] = expired.get(i).recNo;
+			versions[i] = expired.get(i).record.getVersion();
+		}
+		
+		Map<Integer, VersionedRecord> modified = database.readIfModified(recNos, versions);
+		
+		for (CachedRecord cached : expired) {
+			VersionedRecord record = modified.get(cached.recNo);
+			if (record == null) {
+				recordCache.replace(cached.recNo, cached, new CachedRecord(cached.recNo, cached.record));
+			}
+			else if (record.isDeleted()) {
+				recordCache.remove(cached.recNo, cached);
+			}
+			else {
+				recordCache.replace(cached.recNo, cached, new CachedRecord(cached.recNo, record));
+			}
+		}
 	}
 	
 	/**
@@ -68,6 +232,8 @@ public class DataProxy implements CloseableDB {
 			database.update(recNo, data, lockCookie);
 		} catch (RemoteException e) {
 			throw new NetworkException("Network error", e);
+		} finally {
+			recordCache.remove(recNo);
 		}
 	}
 	
@@ -83,6 +249,8 @@ public class DataProxy implements CloseableDB {
 			database.delete(recNo, lockCookie);
 		} catch (RemoteException e) {
 			throw new NetworkException("Network error", e);
+		} finally {
+			recordCache.remove(recNo);
 		}
 	}
 	
@@ -105,6 +273,34 @@ public class DataProxy implements CloseableDB {
 	/**
 	 * {@inheritDoc}
      * @throws DBException if a database failure occurs.
+     * @throws NetworkException if a network error occurs.
+	 */
+	@Override
+	public Map<Integer, String[]> findRecords(String[] criteria) {
+		try {
+			return database.findRecords(criteria);
+		} catch (RemoteException e) {
+			throw new NetworkException("Network error", e);
+		}
+	}
+	
+	/**
+	 * {@inheritDoc}
+     * @throws DBException if a database failure occurs.
+     * @throws NetworkException if a network error occurs.
+	 */
+	@Override
+	public SearchPage findPage(String[] criteria, int fromRecNo, int pageSize) {
+		try {
+			return database.findPage(criteria, fromRecNo, pageSize);
+		} catch (RemoteException e) {
+			throw new NetworkException("Network error", e);
+		}
+	}
+	
+	/**
+	 * {@inheritDoc}
+     * @throws DBException if a database failure occurs.
      * @throws NetworkException if a network error occurs.
 	 */
 	@Override
@@ -118,6 +314,20 @@ public class DataProxy implements CloseableDB {
 		return recNo;
 	}
 	
+	/**
+	 * {@inheritDoc}
+     * @throws DBException if a database failure occurs.
+     * @throws NetworkException if a network error occurs.
+	 */
+	@Override
+	public int[] createRecords(String[][] data) throws DuplicateKeyException {
+		try {
+			return database.createRecords(data);
+		} catch (RemoteException e) {
+			throw new NetworkException("Network error", e);
+		}
+	}
+	
 	/**
 	 * {@inheritDoc}
 	 * @throws NetworkException if a network error occurs.
@@ -130,9 +340,62 @@ public class DataProxy implements CloseableDB {
 		} catch (RemoteException e) {
 			throw new NetworkException("Network error", e);
 		} 
+		heldLocks.put(recNo, lockCookie);
 		return lockCookie;
 	}
 	
+	/**
+	 * {@inheritDoc}
+	 * @throws NetworkException if a network error occurs.
+	 */
+	@Override
+	public long tryLock(int recNo) throws RecordNotFoundException,
+			LockTimeoutException {
+		
+		try {
+			long lockCookie = database.tryLock(recNo);
+			heldLocks.put(recNo, lockCookie);
+			return lockCookie;
+		} catch (RemoteException e) {
+			throw new NetworkException("Network error", e);
+		}
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @throws NetworkException if a network error occurs.
+	 */
+	@Override
+	public long tryLock(int recNo, long timeoutMillis) 
+			throws RecordNotFoundException, LockTimeoutException {
+		
+		try {
+			long lockCookie = database.tryLock(recNo, timeoutMillis);
+			heldLocks.put(recNo, lockCookie);
+			return lockCookie;
+		} catch (RemoteException e) {
+			throw new NetworkException("Network error", e);
+		}
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @throws DBException if a database failure occurs.
+	 * @throws NetworkException if a network error occurs.
+	 */
+	@Override
+	public boolean bookRecord(int recNo, String owner, long timeoutMillis)
+			throws RecordNotFoundException, SecurityException, LockTimeoutException {
+		
+		try {
+			return database.bookRecord(recNo, owner, timeoutMillis);
+		} catch (RemoteException e) {
+			throw new NetworkException("Network error", e);
+		} finally {
+			recordCache.remove(recNo);
+		}
+	}
+	
 	/**
 	 * {@inheritDoc}
 	 * @throws NetworkException if a network error occurs.
@@ -144,12 +407,113 @@ public class DataProxy implements CloseableDB {
 		try {
 			database.unlock(recNo, cookie);
 		} catch (RemoteException e) {
+			/**
+			 * The lock may still be held, so the record is still
+			 * read from the server rather than from the cache.
+			 */
 			throw new NetworkException("Network error", e);
+		} catch (RecordNotFoundException | SecurityException e) {
+			heldLocks.remove(recNo, cookie);
+			throw e;
+		}
+		heldLocks.remove(recNo, cookie);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @throws NetworkException if the callback cannot be exported
+	 *         or registered with the server.
+	 */
+	@Override
+	public synchronized void addRecordChangeListener(RecordChangeListener listener) {
+		listeners.add(listener);
+		if (callback != null) {
+			return;
+		}
+		RecordChangeCallback newCallback = new ListenerCallback();
+		try {
+			UnicastRemoteObject.exportObject(newCallback, 0);
+			database.addRecordChangeCallback(newCallback);
+		} catch (RemoteException e) {
+			unexport(newCallback);
+			listeners.remove(listener);
+			throw new NetworkException("Network error", e);
+		}
+		callback = newCallback;
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @throws NetworkException if the callback cannot be 
+	 *         deregistered from the server.
+	 */
+	@Override
+	public synchronized void removeRecordChangeListener(RecordChangeListener listener) {
+		listeners.remove(listener);
+		if (!listeners.isEmpty() || callback == null) {
+			return;
+		}
+		RecordChangeCallback oldCallback = callback;
+		callback = null;
+		try {
+			database.removeRecordChangeCallback(oldCallback);
+		} catch (RemoteException e) {
+			throw new NetworkException("Network error", e);
+		} finally {
+			unexport(oldCallback);
+		}
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @throws DBException if a database failure occurs.
+	 * @throws NetworkException if a network error occurs.
+	 */
+	@Override
+	public VersionedRecord readVersioned(int recNo) throws RecordNotFoundException {
+		try {
+			return database.readVersioned(recNo);
+		} catch (RemoteException e) {
+			throw new NetworkException("Network error", e);
+		}
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @throws DBException if a database failure occurs.
+	 * @throws NetworkException if a network error occurs.
+	 */
+	@Override
+	public Map<Integer, VersionedRecord> readIfModified(int[] recNos, long[] versions) {
+		try {
+			return database.readIfModified(recNos, versions);
+		} catch (RemoteException e) {
+			throw new NetworkException("Network error", e);
+		}
+	}
+	
+	/**
+	 * Stops a callback from receiving remote calls.
+	 * @param oldCallback the callback.
+	 */
+	private void unexport(RecordChangeCallback oldCallback) {
+		try {
+			UnicastRemoteObject.unexportObject(oldCallback, true);
+		} catch (NoSuchObjectException e) {
+			/**
+			 * The callback was never exported, so there is nothing to undo.
+			 */
 		}
 	}
 
     @Override
     public void closeDatabaseConnection() throws IOException {
+        synchronized (this) {
+            if (callback != null) {
+                unexport(callback);
+                callback = null;
+            }
+        }
         database.closeDatabaseConnection();
     }
 
@@ -158,5 +522,61 @@ public class DataProxy implements CloseableDB {
         return false;
     }
 
+	/**
+	 * The callback that the server calls with changed records,
+	 * which passes each record on to the registered listeners.
+	 */
+	private class ListenerCallback implements RecordChangeCallback {
+		
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public void recordChanged(int recNo, String[] data) {
+			recordCache.remove(recNo);
+			for (RecordChangeListener listener : listeners) {
+				listener.recordChanged(recNo, data);
+			}
+		}
+	}
+	
+	/**
+	 * A cached copy of a record and the time it was last validated.
+	 */
+	private static class CachedRecord {
+		
+		/**
+		 * The record number.
+		 */
+		private final int recNo;
+		
+		/**
+		 * The fields and version of the record.
+		 */
+		private final VersionedRecord record;
+		
+		/**
+		 * The <code>System.nanoTime</code> at which the record was validated.
+		 */
+		private final long validatedAt = System.nanoTime();
+		
+		/**
+		 * Class constructor.
+		 * @param recNo the record number.
+		 * @param record the fields and version of the record.
+		 */
+		CachedRecord(int recNo, VersionedRecord record) {
+			this.recNo = recNo;
+			this.record = record;
+		}
+		
+		/**
+		 * Indicates whether the record must be validated before it is returned.
+		 * @return boolean
+		 */
+		boolean isExpired() {
+			return System.nanoTime() - validatedAt > TimeUnit.MILLISECONDS.toNanos(CACHE_VALIDITY);
+		}
+	}
 	
 }
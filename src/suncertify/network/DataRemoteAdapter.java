@@ -3,10 +3,14 @@ package suncertify.network;
 import java.io.IOException;
 import java.rmi.Remote;
 import java.rmi.RemoteException;
+import java.util.Map;
 
 import suncertify.db.DuplicateKeyException;
+import suncertify.db.LockTimeoutException;
 import suncertify.db.RecordNotFoundException;
+import suncertify.db.SearchPage;
 import suncertify.db.SecurityException;
+import suncertify.db.VersionedRecord;
 
 /**
  * The <code>DataRemoteAdapter</code> interface is identical to the
@@ -33,6 +37,17 @@ public interface DataRemoteAdapter extends Remote {
      */
     public String[] read(int recNo) throws RecordNotFoundException, RemoteException;
     
+    /**
+     * Reads several records in a single call.  Records that do not
+     * exist or have been deleted are left out.
+     * 
+     * @param recNos the unique identifiers of the records to read.
+     * @return a map of the numbers of the records read to their
+     * 		   fields, in ascending order of record number.
+     * @throws RemoteException if a networking error occurs.
+     */
+    public Map<Integer, String[]> readRecords(int[] recNos) throws RemoteException;
+    
     /**
      * Modifies the fields of a record. The new value for field n 
      * appears in data[n].
@@ -79,6 +94,34 @@ public interface DataRemoteAdapter extends Remote {
      */
     public int[] find(String[] criteria) throws RemoteException;
     
+    /**
+     * Finds the records that match the specified criteria, as
+     * <code>find</code> does, and returns them in the same call.
+     * Records deleted before they can be read are left out.
+     * 
+     * @param criteria a String array representing search criteria.
+     * @return a map of the numbers of the matching records to their 
+     * 		   fields, in record number order.
+     * @throws RemoteException if a networking error occurs.
+     */
+    public Map<Integer, String[]> findRecords(String[] criteria) throws RemoteException;
+    
+    /**
+     * Finds a page of the records that match the specified criteria,
+     * as <code>findRecords</code> does, starting from the specified 
+     * record number.  A search is started from record number zero and
+     * continued from the <code>nextRecNo</code> of each page until the
+     * last page is returned.
+     * 
+     * @param criteria a String array representing search criteria.
+     * @param fromRecNo the record number to start searching from.
+     * @param pageSize the maximum number of records on the page.
+     * @return a <code>SearchPage</code> of matching records.
+     * @throws RemoteException if a networking error occurs.
+     */
+    public SearchPage findPage(String[] criteria, int fromRecNo, int pageSize) 
+      throws RemoteException;
+    
     /**
      * Creates a new record in the database (possibly reusing a
      * deleted entry). Inserts the given data, and returns the record
@@ -92,6 +135,19 @@ public interface DataRemoteAdapter extends Remote {
      */
     public int create(String[] data) throws DuplicateKeyException, RemoteException;
     
+    /**
+     * Creates several records in a single call, possibly reusing
+     * deleted entries, as <code>create</code> does for each record.
+     * 
+     * @param data the fields of each record to be created.
+     * @return the unique identifiers of the new records, in
+     * 		   the order of <code>data</code>.
+     * @throws DuplicateKeyException if a record with the same key
+     * 		   already exists in the database.
+     * @throws RemoteException if a networking error occurs.
+     */
+    public int[] createRecords(String[][] data) throws DuplicateKeyException, RemoteException;
+    
     /**
      * Locks a record so that it can only be updated or deleted by this client.
      * Returned value is a cookie that must be used when the record is unlocked,
@@ -109,6 +165,63 @@ public interface DataRemoteAdapter extends Remote {
      */
     public long lock(int recNo) throws RecordNotFoundException, RemoteException;
     
+    /**
+     * Locks a record if it is not already locked by a different
+     * client, without waiting.
+     * 
+     * @param recNo the unique identifier of the record to lock.
+     * @return long cookie a unique token used to identify the owner
+     * 		   of the lock on the record.
+     * @throws RecordNotFoundException if the record does not exist 
+     * 		   in the database.
+     * @throws LockTimeoutException if the record is locked by a
+     * 		   different client.
+     * @throws RemoteException if a networking error occurs.
+     */
+    public long tryLock(int recNo) 
+      throws RecordNotFoundException, LockTimeoutException, RemoteException;
+    
+    /**
+     * Locks a record, waiting no longer than the specified time
+     * if the record is already locked by a different client.
+     * 
+     * @param recNo the unique identifier of the record to lock.
+     * @param timeoutMillis the maximum time to wait in milliseconds.
+     * @return long cookie a unique token used to identify the owner
+     * 		   of the lock on the record.
+     * @throws RecordNotFoundException if the record does not exist 
+     * 		   in the database or an <code>InterruptedException</code>
+     * 		   occurs when trying to lock the record.
+     * @throws LockTimeoutException if the record is still locked by
+     * 		   a different client when the timeout elapses.
+     * @throws RemoteException if a networking error occurs.
+     */
+    public long tryLock(int recNo, long timeoutMillis) 
+      throws RecordNotFoundException, LockTimeoutException, RemoteException;
+    
+    /**
+     * Books a record for an owner, provided that it is not already
+     * booked.  The record is locked, its owner checked and the record
+     * updated and unlocked on the server in a single call.
+     * 
+     * @param recNo the unique identifier of the record to book.
+     * @param owner the owner that the record is booked for.
+     * @param timeoutMillis the maximum time in milliseconds to wait
+     * 		  if the record is locked by a different client.
+     * @return true if the record was booked, false if it
+     * 		   is already booked.
+     * @throws RecordNotFoundException if the record does not exist 
+     * 		   in the database.
+     * @throws SecurityException if the lock on the record is lost
+     * 		   before it is updated.
+     * @throws LockTimeoutException if the record is still locked by
+     * 		   a different client when the timeout elapses.
+     * @throws RemoteException if a networking error occurs.
+     */
+    public boolean bookRecord(int recNo, String owner, long timeoutMillis) 
+      throws RecordNotFoundException, SecurityException, LockTimeoutException, 
+      RemoteException;
+    
     /**
      * Releases the lock on a record. Cookie must be the cookie
      * returned when the record was locked: otherwise a SecurityException
@@ -132,5 +245,51 @@ public interface DataRemoteAdapter extends Remote {
      *         cannot be closed.
      */
     public void closeDatabaseConnection() throws IOException;
+    
+    /**
+     * Registers a callback to be called with every record that is
+     * created, updated or deleted.  Callbacks that cannot be reached
+     * are deregistered.
+     * 
+     * @param callback the exported callback to register.
+     * @throws RemoteException if a networking error occurs.
+     */
+    public void addRecordChangeCallback(RecordChangeCallback callback) throws RemoteException;
+    
+    /**
+     * Deregisters a callback registered with 
+     * <code>addRecordChangeCallback</code>.
+     * 
+     * @param callback the callback to deregister.
+     * @throws RemoteException if a networking error occurs.
+     */
+    public void removeRecordChangeCallback(RecordChangeCallback callback) throws RemoteException;
+    
+    /**
+     * Reads a record together with its version.
+     * 
+     * @param recNo the unique identifier of the record to read.
+     * @return the fields and version of the record.
+     * @throws RecordNotFoundException if the record does not exist
+     * 		   in the database.
+     * @throws RemoteException if a networking error occurs.
+     */
+    public VersionedRecord readVersioned(int recNo) 
+      throws RecordNotFoundException, RemoteException;
+    
+    /**
+     * Reads those of the specified records whose version is no longer
+     * the specified version, in a single call.  Records that have been
+     * deleted are returned with null fields.
+     * 
+     * @param recNos the numbers of the records to check.
+     * @param versions the version of each record in <code>recNos</code>
+     * 		  that the caller holds.
+     * @return a map of the numbers of the records that have changed
+     * 		   to their current fields and version.
+     * @throws RemoteException if a networking error occurs.
+     */
+    public Map<Integer, VersionedRecord> readIfModified(int[] recNos, long[] versions) 
+      throws RemoteException;
 
 }
@@ -3,18 +3,37 @@ package suncertify.network;
 import java.io.IOException;
 import java.rmi.RemoteException;
 import java.rmi.server.UnicastRemoteObject;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import suncertify.db.CloseableDB;
 import suncertify.db.DBException;
 import suncertify.db.Data;
 import suncertify.db.DuplicateKeyException;
+import suncertify.db.LockTimeoutException;
+import suncertify.db.RecordChangeListener;
 import suncertify.db.RecordNotFoundException;
+import suncertify.db.SearchPage;
 import suncertify.db.SecurityException;
+import suncertify.db.VersionedRecord;
 
 /**
  * <code>DataRemoteAdapterImpl</code> wraps an instance of 
  * <code>db.Data</code> in order to use it as a remote object.
  * In essence it is an implementation of the Adapter design pattern.
+ * Records changed through <code>database</code> are passed on to the 
+ * registered <code>RecordChangeCallback</code>s by background threads, so
+ * that clients never delay the thread that changed the record.  Each
+ * callback is called in the order in which records changed, independently
+ * of the others, so a slow client delays only its own notifications.  A
+ * client that falls <code>MAX_PENDING_CHANGES</code> changes behind is
+ * deregistered, and falls back to searching again as if it had never
+ * registered.
  *
  * @author John Harding
  */
@@ -31,6 +50,31 @@ public class DataRemoteAdapterImpl extends UnicastRemoteObject
      */
     private CloseableDB database;
     
+    /**
+     * The most changes that may wait to be passed on to a callback.
+     */
+    public static final int MAX_PENDING_CHANGES = 1024;
+    
+    /**
+     * Maps the callbacks of the clients notified of changed
+     * records to the changes waiting to be passed on to them.
+     */
+    private final Map<RecordChangeCallback, Subscription> callbacks 
+            = new ConcurrentHashMap<RecordChangeCallback, Subscription>();
+    
+    /**
+     * Passes the records changed through <code>database</code> on to
+     * the callbacks, until the database connection is closed.
+     */
+    private final RecordChangeListener listener;
+    
+    /**
+     * Calls the callbacks, on a thread for each callback
+     * that has changes waiting.
+     */
+    private final ExecutorService notifier 
+            = RequestExecutorMode.PLATFORM.newExecutor("RecordChange-notifier", 1);
+    
     /**
      * Class constructor.
      * @param dbLocation the path to the database file.
@@ -39,9 +83,28 @@ public class DataRemoteAdapterImpl extends UnicastRemoteObject
      * 			<code>database</code> cannot be instantiated. 
      */
     public DataRemoteAdapterImpl(String dbLocation) throws RemoteException {
-        database = new Data(dbLocation);
+        this(new Data(dbLocation));
+    }
+    
+    /**
+     * Class constructor.
+     * @param database the database to wrap.
+     * @throws RemoteException if a network error occurs.
+     */
+    public DataRemoteAdapterImpl(CloseableDB database) throws RemoteException {
+        this.database = database;
+        listener = new RecordChangeListener() {
+            @Override
+            public void recordChanged(int recNo, String[] data) {
+                for (Subscription subscription : callbacks.values()) {
+                    subscription.add(new RecordChange(recNo, data));
+                }
+            }
+        };
+        database.addRecordChangeListener(listener);
     }
     
+    
     /**
      * {@inheritDoc}
      * @throws DBException if the read operation fails.
@@ -53,6 +116,15 @@ public class DataRemoteAdapterImpl extends UnicastRemoteObject
         return database.read(recNo);
     }
     
+    /**
+     * {@inheritDoc}
+     * @throws DBException if the read operation fails.
+     */
+    @Override
+    public Map<Integer, String[]> readRecords(int[] recNos) throws RemoteException {
+        return database.readRecords(recNos);
+    }
+    
     /**
      * {@inheritDoc}
      * @throws DBException if the update operation fails.
@@ -84,6 +156,26 @@ public class DataRemoteAdapterImpl extends UnicastRemoteObject
         return database.find(criteria);
     }
     
+    /**
+     * {@inheritDoc}
+     * @throws DBException if the find operation fails.
+     */
+    @Override
+    public Map<Integer, String[]> findRecords(String[] criteria) throws RemoteException {
+        return database.findRecords(criteria);
+    }
+    
+    /**
+     * {@inheritDoc}
+     * @throws DBException if the find operation fails.
+     */
+    @Override
+    public SearchPage findPage(String[] criteria, int fromRecNo, int pageSize) 
+            throws RemoteException {
+        
+        return database.findPage(criteria, fromRecNo, pageSize);
+    }
+    
     /**
      * {@inheritDoc}
      * @throws DBException if the create operation fails.
@@ -95,6 +187,17 @@ public class DataRemoteAdapterImpl extends UnicastRemoteObject
         return database.create(data);
     }
     
+    /**
+     * {@inheritDoc}
+     * @throws DBException if the create operation fails.
+     */
+    @Override
+    public int[] createRecords(String[][] data) throws DuplicateKeyException,
+            RemoteException {
+        
+        return database.createRecords(data);
+    }
+    
     /**
      * {@inheritDoc}
      */
@@ -103,6 +206,38 @@ public class DataRemoteAdapterImpl extends UnicastRemoteObject
         return database.lock(recNo);
     }
     
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long tryLock(int recNo) throws RecordNotFoundException,
+            LockTimeoutException, RemoteException {
+        
+        return database.tryLock(recNo);
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long tryLock(int recNo, long timeoutMillis) throws RecordNotFoundException,
+            LockTimeoutException, RemoteException {
+        
+        return database.tryLock(recNo, timeoutMillis);
+    }
+    
+    /**
+     * {@inheritDoc}
+     * @throws DBException if the record cannot be read or updated.
+     */
+    @Override
+    public boolean bookRecord(int recNo, String owner, long timeoutMillis) 
+            throws RecordNotFoundException, SecurityException, 
+            LockTimeoutException, RemoteException {
+        
+        return database.bookRecord(recNo, owner, timeoutMillis);
+    }
+    
     /**
      * {@inheritDoc}
      */
@@ -118,9 +253,166 @@ public class DataRemoteAdapterImpl extends UnicastRemoteObject
      */
     @Override
     public void closeDatabaseConnection() throws IOException {
+        /**
+         * Data keeps its listeners in a static list, so the listener
+         * would otherwise outlive this adapter if the server were
+         * started again in the same JVM.
+         */
+        database.removeRecordChangeListener(listener);
+        callbacks.clear();
+        notifier.shutdown();
         database.closeDatabaseConnection();
     }
-
     
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void addRecordChangeCallback(RecordChangeCallback callback) throws RemoteException {
+        callbacks.put(callback, new Subscription(callback));
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void removeRecordChangeCallback(RecordChangeCallback callback) throws RemoteException {
+        callbacks.remove(callback);
+    }
+    
+    /**
+     * {@inheritDoc}
+     * @throws DBException if the read operation fails.
+     */
+    @Override
+    public VersionedRecord readVersioned(int recNo) throws RecordNotFoundException,
+            RemoteException {
+        
+        return database.readVersioned(recNo);
+    }
+    
+    /**
+     * {@inheritDoc}
+     * @throws DBException if the read operation fails.
+     */
+    @Override
+    public Map<Integer, VersionedRecord> readIfModified(int[] recNos, long[] versions)
+            throws RemoteException {
+        
+        return database.readIfModified(recNos, versions);
+    }
+    
+    /**
+     * The changes waiting to be passed on to one callback.  At most one
+     * thread at a time passes them on, in the order they were added.
+     */
+    private class Subscription implements Runnable {
+        
+        /**
+         * The callback.
+         */
+        private final RecordChangeCallback callback;
+        
+        /**
+         * The changes waiting to be passed on.
+         */
+        private final Queue<RecordChange> pending 
+                = new ArrayBlockingQueue<RecordChange>(MAX_PENDING_CHANGES);
+        
+        /**
+         * Set while a thread is passing on the changes, or is about to.
+         */
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+        
+        /**
+         * Class constructor.
+         * @param callback the callback.
+         */
+        Subscription(RecordChangeCallback callback) {
+            this.callback = callback;
+        }
+        
+        /**
+         * Adds a change to be passed on, or deregisters the
+         * callback if too many changes are already waiting.
+         * @param change the change.
+         */
+        void add(RecordChange change) {
+            if (!pending.offer(change)) {
+                callbacks.remove(callback, this);
+                return;
+            }
+            schedule();
+        }
+        
+        /**
+         * Starts a thread passing on the changes, unless one has been
+         * started already.
+         */
+        private void schedule() {
+            if (scheduled.compareAndSet(false, true)) {
+                try {
+                    notifier.execute(this);
+                } catch (RejectedExecutionException e) {
+                    /**
+                     * The adapter has been closed.
+                     */
+                    scheduled.set(false);
+                }
+            }
+        }
+        
+        /**
+         * Passes on the waiting changes.  The callback is
+         * deregistered if it cannot be reached.
+         */
+        @Override
+        public void run() {
+            RecordChange change;
+            while ((change = pending.poll()) != null) {
+                try {
+                    callback.recordChanged(change.recNo, change.data);
+                } catch (RemoteException e) {
+                    callbacks.remove(callback, this);
+                    return;
+                }
+            }
+            scheduled.set(false);
+            /**
+             * A change added after the queue was found empty, but before
+             * scheduled was cleared, would otherwise wait for the next.
+             */
+            if (!pending.isEmpty()) {
+                schedule();
+            }
+        }
+    }
+    
+    /**
+     * A record that has changed.
+     */
+    private static class RecordChange {
+        
+        /**
+         * The number of the record.
+         */
+        private final int recNo;
+        
+        /**
+         * The fields of the record, or null if it has been deleted.
+         */
+        private final String[] data;
+        
+        /**
+         * Class constructor.
+         * @param recNo the number of the record.
+         * @param data the fields of the record, or null if
+         *        it has been deleted.
+         */
+        RecordChange(int recNo, String[] data) {
+            this.recNo = recNo;
+            this.data = data;
+        }
+    }
 
 }
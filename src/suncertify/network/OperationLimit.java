@@ -0,0 +1,126 @@
+package suncertify.network;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Limits how many operations of one kind execute at once.  An operation
+ * that finds the limit reached waits its turn in a bounded queue, for
+ * a bounded time.  It is rejected with <code>ServerBusyException</code>
+ * if the queue is full or its wait times out.
+ *
+ * @author John Harding
+ */
+class OperationLimit {
+
+    /**
+     * The kind of operation limited, used in messages.
+     */
+    private final String name;
+
+    /**
+     * One permit for each operation that may execute at once.
+     * Fair, so that waiting operations are admitted in order.
+     */
+    private final Semaphore permits;
+
+    /**
+     * The most operations that may wait for a permit.
+     */
+    private final int maxQueued;
+
+    /**
+     * How long an operation may wait for a permit, in milliseconds.
+     */
+    private final long maxWaitMillis;
+
+    /**
+     * The number of operations waiting for a permit.
+     */
+    private final AtomicInteger queued = new AtomicInteger();
+
+    /**
+     * The number of operations rejected.
+     */
+    private final AtomicLong rejected = new AtomicLong();
+
+    /**
+     * Class constructor.
+     * @param name the kind of operation limited.
+     * @param maxConcurrent the most operations that may execute at once.
+     * @param maxQueued the most operations that may wait to execute.
+     * @param maxWaitMillis how long an operation may wait to execute.
+     * @throws IllegalArgumentException if <code>maxConcurrent</code>
+     *         is less than one, or <code>maxQueued</code> or
+     *         <code>maxWaitMillis</code> is negative.
+     */
+    OperationLimit(String name, int maxConcurrent, int maxQueued, long maxWaitMillis) {
+        if (maxConcurrent < 1 || maxQueued < 0 || maxWaitMillis < 0) {
+            throw new IllegalArgumentException("Invalid limit for " + name);
+        }
+        this.name = name;
+        this.permits = new Semaphore(maxConcurrent, true);
+        this.maxQueued = maxQueued;
+        this.maxWaitMillis = maxWaitMillis;
+    }
+
+    /**
+     * Admits an operation, waiting if the limit has been reached.
+     * Every call that returns must be followed by a call to
+     * <code>release</code>.
+     * @throws ServerBusyException if the operation is rejected.
+     */
+    void acquire() {
+        try {
+            /**
+             * A timed tryAcquire, unlike tryAcquire(), respects the
+             * fairness of the semaphore, so an operation arriving as a
+             * permit is released cannot take it from one that is waiting.
+             */
+            if (permits.tryAcquire(0, TimeUnit.MILLISECONDS)) {
+                return;
+            }
+            if (queued.incrementAndGet() > maxQueued) {
+                queued.decrementAndGet();
+                throw reject();
+            }
+            try {
+                if (!permits.tryAcquire(maxWaitMillis, TimeUnit.MILLISECONDS)) {
+                    throw reject();
+                }
+            } finally {
+                queued.decrementAndGet();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw reject();
+        }
+    }
+
+    /**
+     * Ends an admitted operation.
+     */
+    void release() {
+        permits.release();
+    }
+
+    /**
+     * Getter.
+     * @return the number of operations rejected.
+     */
+    long getRejectedCount() {
+        return rejected.get();
+    }
+
+    /**
+     * Counts a rejected operation.
+     * @return the exception to reject it with.
+     */
+    private ServerBusyException reject() {
+        rejected.incrementAndGet();
+        return new ServerBusyException("The server is too busy to " + name + ", please try again");
+    }
+
+}
@@ -0,0 +1,26 @@
+package suncertify.network;
+
+import java.rmi.Remote;
+import java.rmi.RemoteException;
+
+/**
+ * The <code>RecordChangeCallback</code> interface is the remote 
+ * counterpart of <code>db.RecordChangeListener</code>.  A client exports 
+ * an object that implements this interface and registers it with the 
+ * server, which then calls it back with each record that changes.
+ * @see suncertify.network.DataRemoteAdapter#addRecordChangeCallback
+ *
+ * @author John Harding
+ */
+public interface RecordChangeCallback extends Remote {
+
+    /**
+     * Invoked when a record has been created, updated or deleted.
+     * @param recNo the number of the record that has changed.
+     * @param data the fields of the record, or null if the
+     *        record has been deleted.
+     * @throws RemoteException if a networking error occurs.
+     */
+    public void recordChanged(int recNo, String[] data) throws RemoteException;
+
+}
@@ -0,0 +1,171 @@
+package suncertify.network;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+/**
+ * The kinds of thread that <code>BinaryServer</code> executes requests
+ * on.  Requests such as <code>lock</code> may wait for a long time, and
+ * hold their thread while they do.
+ *
+ * @author John Harding
+ */
+public enum RequestExecutorMode {
+
+    /**
+     * A new platform thread for each concurrent request, reused once
+     * it is idle.  The number of threads is not limited.
+     */
+    PLATFORM,
+
+    /**
+     * At most <code>maxThreads</code> platform threads.  Further requests
+     * queue until a thread is free.  <code>BinaryServer</code> executes
+     * requests that may wait for a lock on an executor of their own, so
+     * an <code>unlock</code> never queues behind the requests waiting
+     * for it.
+     */
+    BOUNDED,
+
+    /**
+     * A new virtual thread for each request, so that thousands of
+     * requests waiting for locks hold no platform threads.  Requires
+     * Java 21; on earlier versions <code>BOUNDED</code> is used instead.
+     */
+    VIRTUAL;
+
+    /**
+     * The default maximum number of threads for <code>BOUNDED</code>.
+     */
+    public static final int DEFAULT_MAX_THREADS = 256;
+
+    /**
+     * Logger for the RequestExecutorMode class.
+     */
+    private static Logger log = Logger.getLogger(RequestExecutorMode.class.getName());
+
+    /**
+     * Parses a mode from its name, ignoring case.
+     * @param name the name of the mode, which may be null.
+     * @return the mode, or <code>PLATFORM</code> if <code>name</code>
+     *         is null or names no mode.
+     */
+    public static RequestExecutorMode parse(String name) {
+        if (name != null) {
+            for (RequestExecutorMode mode : values()) {
+                if (mode.name().equalsIgnoreCase(name.trim())) {
+                    return mode;
+                }
+            }
+        }
+        return PLATFORM;
+    }
+
+    /**
+     * Creates an executor of this mode.  Its threads are daemon threads.
+     * @param threadName the prefix of the names of the threads.
+     * @param maxThreads the maximum number of threads, used by
+     *        <code>BOUNDED</code> only.
+     * @return the executor.
+     * @throws IllegalArgumentException if <code>maxThreads</code>
+     *         is less than one.
+     */
+    public ExecutorService newExecutor(String threadName, int maxThreads) {
+        if (maxThreads < 1) {
+            throw new IllegalArgumentException("Maximum threads must be at least one: " + maxThreads);
+        }
+        ThreadFactory factory = new NamedDaemonThreadFactory(threadName);
+        switch (this) {
+            case VIRTUAL:
+                ExecutorService executor = newVirtualThreadExecutor(threadName);
+                if (executor != null) {
+                    return executor;
+                }
+                log.warning("Virtual threads are not available, using at most "
+                        + maxThreads + " platform threads");
+                return newBoundedExecutor(factory, maxThreads);
+            case BOUNDED:
+                return newBoundedExecutor(factory, maxThreads);
+            default:
+                return Executors.newCachedThreadPool(factory);
+        }
+    }
+
+    /**
+     * Creates an executor of at most <code>maxThreads</code> threads,
+     * which are stopped once they have been idle for a minute.
+     * @param factory creates the threads.
+     * @param maxThreads the maximum number of threads.
+     * @return the executor.
+     */
+    private static ExecutorService newBoundedExecutor(ThreadFactory factory, int maxThreads) {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(maxThreads, maxThreads,
+                60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), factory);
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * Creates an executor that starts a new virtual thread for each task.
+     * The source level of the application predates virtual threads, so
+     * they are reached by reflection.
+     * @param threadName the prefix of the names of the threads.
+     * @return the executor, or null if virtual threads are not available.
+     */
+    private static ExecutorService newVirtualThreadExecutor(String threadName) {
+        try {
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            builder = builderClass.getMethod("name", String.class, long.class)
+                    .invoke(builder, threadName + "-", 1L);
+            ThreadFactory factory = (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+            Method newExecutor = Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+            return (ExecutorService) newExecutor.invoke(null, factory);
+        } catch (ReflectiveOperationException | UnsupportedOperationException e) {
+            /**
+             * Before Java 21 there is no Thread.ofVirtual, and on
+             * Java 19 and 20 it throws unless preview features are on.
+             */
+            return null;
+        }
+    }
+
+    /**
+     * Creates daemon threads named with a prefix and a sequence number.
+     */
+    private static class NamedDaemonThreadFactory implements ThreadFactory {
+
+        /**
+         * The prefix of the names of the threads.
+         */
+        private final String threadName;
+
+        /**
+         * The number of threads created.
+         */
+        private final AtomicInteger count = new AtomicInteger();
+
+        /**
+         * Class constructor.
+         * @param threadName the prefix of the names of the threads.
+         */
+        NamedDaemonThreadFactory(String threadName) {
+            this.threadName = threadName;
+        }
+
+        @Override
+        public Thread newThread(Runnable task) {
+            Thread thread = new Thread(task, threadName + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+
+}
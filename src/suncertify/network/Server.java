@@ -1,14 +1,23 @@
 package suncertify.network;
 
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
 import java.net.BindException;
 import java.rmi.RemoteException;
 import java.rmi.registry.LocateRegistry;
 import java.rmi.registry.Registry;
+import java.rmi.server.UnicastRemoteObject;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
 import suncertify.application.Utils;
+import suncertify.db.CloseableDB;
+import suncertify.db.Data;
+import suncertify.db.LockManager;
 
 
 /**
@@ -16,7 +25,9 @@ import suncertify.application.Utils;
  * programmatically and registers an instance of 
  * <code>DataRemoteAdapterImpl</code>, binding the
  * <code>DataRemoteAdapterImpl</code> to the name
- * "Data" in the registry.
+ * "Data" in the registry.  While it runs, the metrics of the
+ * database, of record locking and of admission control are
+ * registered as MBeans with the platform MBean server.
  *
  * @author John Harding
  */
@@ -31,6 +42,31 @@ public class Server {
      * Provides database connections for remote clients.
      */
     private static DataRemoteAdapterImpl remoteObject;
+    
+    /**
+     * The RMI registry that the remote object is bound in.
+     */
+    private static Registry registry;
+    
+    /**
+     * Serves the binary protocol, if it has been started.
+     */
+    private static BinaryServer binaryServer;
+    
+    /**
+     * The name of the MBean of the metrics of the database.
+     */
+    public static final String DATABASE_MBEAN_NAME = "suncertify:type=Database";
+    
+    /**
+     * The name of the MBean of the metrics of record locking.
+     */
+    public static final String LOCK_MBEAN_NAME = "suncertify:type=LockManager";
+    
+    /**
+     * The name of the MBean of the metrics of admission control.
+     */
+    public static final String ADMISSION_CONTROL_MBEAN_NAME = "suncertify:type=AdmissionControl";
 	
     /**
      * Starts RMI registry and registers <code>DataRemoteAdapterImpl</code>.
@@ -42,14 +78,79 @@ public class Server {
      * @throws NetworkException if a network error occurs.
      */
 	public static void startServer(String dbLocation, int port) {
-	    Utils.setLogLevel(log, Level.FINER);
+	    startServer(dbLocation, port, null);
+	}
+	
+    /**
+     * Starts RMI registry and registers <code>DataRemoteAdapterImpl</code>,
+     * and optionally starts a <code>BinaryServer</code> that serves the
+     * same database.
+     * @param dbLocation the location of the database on the database server
+     *        machine.
+     * @param port the port on which to run RMI registry.
+     * @param binaryPort the port on which to run the binary protocol 
+     *        listener, or null to run none.
+     * @throws DBException if a problem occurs registering
+     *         a remote object in the RMI registry.
+     * @throws NetworkException if a network error occurs.
+     */
+	public static void startServer(String dbLocation, int port, Integer binaryPort) {
+	    startServer(dbLocation, port, binaryPort, RequestExecutorMode.PLATFORM, 
+	            RequestExecutorMode.DEFAULT_MAX_THREADS);
+	}
+	
+    /**
+     * Starts RMI registry and registers <code>DataRemoteAdapterImpl</code>,
+     * and optionally starts a <code>BinaryServer</code> that serves the
+     * same database, executing its requests as <code>requestExecutor</code>
+     * determines.  The threads that execute RMI calls belong to the RMI 
+     * runtime, and are not affected.
+     * @param dbLocation the location of the database on the database server
+     *        machine.
+     * @param port the port on which to run RMI registry.
+     * @param binaryPort the port on which to run the binary protocol 
+     *        listener, or null to run none.
+     * @param requestExecutor the kind of thread that the binary protocol
+     *        listener executes requests on.
+     * @param maxRequestThreads the maximum number of threads that the binary
+     *        protocol listener executes requests on, if they are bounded.
+     * @throws DBException if a problem occurs registering
+     *         a remote object in the RMI registry.
+     * @throws NetworkException if a network error occurs.
+     */
+	public static void startServer(String dbLocation, int port, Integer binaryPort,
+	        RequestExecutorMode requestExecutor, int maxRequestThreads) {
+	    Utils.setLogLevel(log, Level.INFO);
+	    /**
+	     * Both listeners share one database, so that its admission
+	     * limits apply to RMI and binary protocol clients together.
+	     */
+	    AdmissionControlledDB database = new AdmissionControlledDB(new Data(dbLocation));
 		try {
-			LocateRegistry.createRegistry(port);
-			registerObject(dbLocation, port);
+			if (binaryPort != null) {
+			    /**
+			     * Bound before anything is exported, so that a binary port
+			     * in use leaves nothing behind but the database to close.
+			     */
+			    binaryServer = new BinaryServer(database, binaryPort, requestExecutor, maxRequestThreads);
+			}
+			registry = LocateRegistry.createRegistry(port);
+			registerObject(database);
+			registerMBeans(database);
 			log.info("RMI registry running on port " + port);
+			if (binaryServer != null) {
+			    binaryServer.start();
+			    log.info("Binary protocol listener running on port " + binaryPort 
+			            + " with " + requestExecutor + " request threads");
+			}
 		} 
+		catch (RuntimeException e) {
+		    stopAfterFailedStart(database);
+		    throw e;
+		}
 		catch (RemoteException e) {
 		    log.throwing("Server.java", "startServer", e);
+		    stopAfterFailedStart(database);
 			Throwable cause = e.getCause();
 			if (cause instanceof BindException) {
 				/**
@@ -70,6 +171,11 @@ public class Server {
 	 * Closes the database connection.
 	 */
 	public static void closeDatabaseConnection() {
+	    if (binaryServer != null) {
+	        binaryServer.close();
+	        binaryServer = null;
+	    }
+	    unregisterMBeans();
 	    try {
 	        if (remoteObject != null) {
 	            remoteObject.closeDatabaseConnection();
@@ -86,18 +192,83 @@ public class Server {
 	}
 	
 	/**
-	 * Exports <code>DataRemoteAdapterImpl</code> to an RMI registry.
-	 * @param dbLocation the location of the database on the database server
-     *        machine.
-	 * @param port the port on which RMI registry is running.
+	 * Exports <code>DataRemoteAdapterImpl</code> to the RMI registry.
+	 * @param database the database on the database server machine.
 	 * @throws RemoteException if a networking error occurs.
-	 * @throws DBException if the <code>DataRemoteAdapterImpl<code>
-     *         instance <code>remoteObject</code> cannot be created.
 	 */
-	private static void registerObject(String dbLocation, int port) throws RemoteException {
-		remoteObject = new DataRemoteAdapterImpl(dbLocation);
-		Registry registry = LocateRegistry.getRegistry(port);
+	private static void registerObject(CloseableDB database) throws RemoteException {
+		remoteObject = new DataRemoteAdapterImpl(database);
 		registry.rebind("Data", remoteObject);
     }
 	
+	/**
+	 * Undoes whatever a failed <code>startServer</code> had done, so that
+	 * the server can be started again in the same JVM: the binary protocol
+	 * listener is closed, the remote object and the registry are unexported,
+	 * the MBeans are unregistered and the database is closed.
+	 * @param database the database that the server was started with.
+	 */
+	private static void stopAfterFailedStart(CloseableDB database) {
+	    if (binaryServer != null) {
+	        binaryServer.close();
+	        binaryServer = null;
+	    }
+	    unregisterMBeans();
+	    try {
+	        if (remoteObject != null) {
+	            UnicastRemoteObject.unexportObject(remoteObject, true);
+	            remoteObject.closeDatabaseConnection();
+	            remoteObject = null;
+	        }
+	        else {
+	            database.closeDatabaseConnection();
+	        }
+	        if (registry != null) {
+	            UnicastRemoteObject.unexportObject(registry, true);
+	            registry = null;
+	        }
+	    } catch (IOException e) {
+	        /**
+	         * The failure that stopped the server is what the
+	         * user needs to know of, rather than this one.
+	         */
+	        log.throwing("Server.java", "stopAfterFailedStart", e);
+	    }
+	}
+	
+	/**
+	 * Registers the MBeans of the metrics of the server with the platform
+	 * MBean server, replacing those of a server previously run in the JVM.
+	 * The server runs without them if they cannot be registered.
+	 * @param admissionControl the admission control of the database.
+	 */
+	private static void registerMBeans(AdmissionControlledDB admissionControl) {
+	    unregisterMBeans();
+	    MBeanServer mbeanServer = ManagementFactory.getPlatformMBeanServer();
+	    try {
+	        mbeanServer.registerMBean(Data.getMetrics(), new ObjectName(DATABASE_MBEAN_NAME));
+	        mbeanServer.registerMBean(LockManager.getMetrics(), new ObjectName(LOCK_MBEAN_NAME));
+	        mbeanServer.registerMBean(admissionControl, new ObjectName(ADMISSION_CONTROL_MBEAN_NAME));
+	    } catch (JMException e) {
+	        log.warning("Could not register the metrics MBeans: " + e.getMessage());
+	    }
+	}
+	
+	/**
+	 * Unregisters the MBeans of the metrics of the server, if registered.
+	 */
+	private static void unregisterMBeans() {
+	    MBeanServer mbeanServer = ManagementFactory.getPlatformMBeanServer();
+	    for (String name : new String[] {DATABASE_MBEAN_NAME, LOCK_MBEAN_NAME, ADMISSION_CONTROL_MBEAN_NAME}) {
+	        try {
+	            ObjectName objectName = new ObjectName(name);
+	            if (mbeanServer.isRegistered(objectName)) {
+	                mbeanServer.unregisterMBean(objectName);
+	            }
+	        } catch (JMException e) {
+	            log.warning("Could not unregister the MBean " + name + ": " + e.getMessage());
+	        }
+	    }
+	}
+	
 }
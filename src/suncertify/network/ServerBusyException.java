@@ -0,0 +1,32 @@
+package suncertify.network;
+
+/**
+ * Thrown when the server turns a request away because too many
+ * requests of the same kind are already being executed or are
+ * waiting to be.  The request may be retried later.
+ *
+ * @author John Harding
+ */
+public class ServerBusyException extends NetworkException {
+
+    /**
+     * The SUID.
+     */
+    private static final long serialVersionUID = 3223L;
+
+    /**
+     * Construct a new <code>ServerBusyException</code>.
+     */
+    public ServerBusyException() {
+        super();
+    }
+
+    /**
+     * Construct a new <code>ServerBusyException</code> with message.
+     * @param message the exception message.
+     */
+    public ServerBusyException(String message) {
+        super(message, null);
+    }
+
+}
@@ -2,9 +2,11 @@ package suncertify.presentation;
 
 import suncertify.application.*;
 import suncertify.db.DBException;
+import suncertify.db.LockTimeoutException;
 import suncertify.db.RecordNotFoundException;
 import suncertify.db.SecurityException;
 import suncertify.network.NetworkException;
+import suncertify.network.ServerBusyException;
 
 import javax.swing.*;
 import javax.swing.border.BevelBorder;
@@ -25,9 +27,10 @@ import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
 import java.text.ParseException;
 import java.util.LinkedHashMap;
-import java.util.Map;
+import java.util.List;
 import java.util.Observable;
 import java.util.Observer;
+import java.util.concurrent.ExecutionException;
 
 /**
  * This class is the main client GUI component where all
@@ -42,6 +45,11 @@ public class MainWindow extends JFrame implements Observer {
      */
     private static final long serialVersionUID = 1771L;
 
+    /**
+     * The number of rooms requested at a time when filling the table.
+     */
+    private static final int SEARCH_PAGE_SIZE = 100;
+
     /**
      * Mask format that only allows digits in the customer ID field.
      */
@@ -58,6 +66,11 @@ public class MainWindow extends JFrame implements Observer {
      */
     private SearchCriteria lastSearch = null;
 
+    /**
+     * The search that is filling the table, if any.
+     */
+    private SearchWorker searchWorker = null;
+
     /**
      * Table model for <code>JTable</code>.
      */
@@ -119,7 +132,6 @@ public class MainWindow extends JFrame implements Observer {
      * data displayed to the user each time an attempt is made to book a room.
      */
     private void refreshData() {
-        Map<Integer, Room> rooms = new LinkedHashMap<Integer, Room>();
         SearchCriteria criteria;
         if (lastSearch == null) {
             criteria = new SearchCriteria();
@@ -128,27 +140,47 @@ public class MainWindow extends JFrame implements Observer {
         else {
             criteria = lastSearch;
         }
-        try {
-            rooms = service.searchRooms(criteria);
-            tableModel.setRoomMap(rooms);
-        } catch (DBException e) {
-            Dialogs.showErrorDialog(this, "Cannot show the latest bookings", "Database error");
-        } catch (NetworkException e) {
-            Dialogs.showErrorDialog(this, "Cannot show the latest bookings", "Network error");
+        search(criteria, "Cannot show the latest bookings");
+    }
+
+    /**
+     * Empties the table and fills it with the rooms matching the search
+     * criteria a page at a time, in the background, so that the first 
+     * rooms are shown as soon as they are found.  A search that is still
+     * filling the table is cancelled.
+     * @param criteria the search criteria.
+     * @param errorMessage the message shown if the search fails.
+     */
+    private void search(SearchCriteria criteria, String errorMessage) {
+        if (searchWorker != null) {
+            searchWorker.cancel(false);
         }
+        tableModel.setRoomMap(new LinkedHashMap<Integer, Room>());
+        searchWorker = new SearchWorker(criteria, errorMessage);
+        searchWorker.execute();
     }
 
     /**
      * Refreshes the table data. How this is accomplished
-     * depends on the mode the application is running in.
-     * If in stand alone mode, a simple GUI refresh is
-     * performed. If running in network mode, a search
-     * is carried out to see if other clients have updated
+     * depends on the notification.  A <code>RoomChange</code>
+     * updates or removes the row of that room only.  After a
+     * booking, a simple GUI refresh is performed if changes are
+     * notified, which is always so in stand alone mode.  Otherwise
+     * a search is carried out to see if other clients have updated 
      * data.
      */
     @Override
     public void update(Observable o, Object mode) {
-        if (mode == ApplicationMode.STANDALONE_CLIENT) {
+        if (mode instanceof RoomChange) {
+            final RoomChange change = (RoomChange) mode;
+            SwingUtilities.invokeLater(new Runnable() {
+                @Override
+                public void run() {
+                    tableModel.updateRoom(change.getRecNo(), change.getData());
+                }
+            });
+        }
+        else if (mode == ApplicationMode.STANDALONE_CLIENT || service.isNotifiedOfChanges()) {
             tableModel.fireTableDataChanged();
         }
         else if (mode == ApplicationMode.NETWORK_CLIENT) {
@@ -477,7 +509,6 @@ public class MainWindow extends JFrame implements Observer {
         public void actionPerformed(ActionEvent e) {
             String name = nameTextField.getText().trim();
             String location = locationTextField.getText().trim();
-            Map<Integer, Room> matches = new LinkedHashMap<Integer, Room>();
             SearchCriteria criteria = new SearchCriteria();
 
             if (name.equals("") && location.equals("")) {
@@ -488,14 +519,7 @@ public class MainWindow extends JFrame implements Observer {
                         .matchLocation(location);
             }
 
-            try {
-                matches = service.searchRooms(criteria);
-                tableModel.setRoomMap(matches);
-            } catch (DBException ex) {
-                Dialogs.showErrorDialog(parent, "Could not retrieve data", "Database error");
-            } catch (NetworkException ex) {
-                Dialogs.showErrorDialog(parent, "Could not retrieve data", "Network error");
-            }
+            search(criteria, "Could not retrieve data");
             lastSearch = criteria;
             customerIdTextField.setText("");
             customerIdTextField.setEditable(false);
@@ -503,6 +527,85 @@ public class MainWindow extends JFrame implements Observer {
         }
     }
 
+    /**
+     * Fills the table with the rooms matching a search, requesting
+     * them a page at a time on a background thread and appending each
+     * page to the table on the event dispatch thread.  Once cancelled,
+     * it stops requesting pages and no longer changes the table.
+     */
+    private class SearchWorker extends SwingWorker<Void, List<Room>> {
+
+        MainWindow parent = MainWindow.this;
+
+        /**
+         * The search criteria.
+         */
+        private final SearchCriteria criteria;
+
+        /**
+         * The message shown if the search fails.
+         */
+        private final String errorMessage;
+
+        /**
+         * Class constructor.
+         * @param criteria the search criteria.
+         * @param errorMessage the message shown if the search fails.
+         */
+        SearchWorker(SearchCriteria criteria, String errorMessage) {
+            this.criteria = criteria;
+            this.errorMessage = errorMessage;
+        }
+
+        @Override
+        protected Void doInBackground() {
+            int fromRecNo = 0;
+            RoomPage page;
+            do {
+                page = service.searchRooms(criteria, fromRecNo, SEARCH_PAGE_SIZE);
+                publish(page.getRooms());
+                fromRecNo = page.getNextRecNo();
+            } while (!page.isLastPage() && !isCancelled());
+            return null;
+        }
+
+        @Override
+        protected void process(List<List<Room>> pages) {
+            if (isCancelled()) {
+                return;
+            }
+            for (List<Room> rooms : pages) {
+                tableModel.addRooms(rooms);
+            }
+        }
+
+        @Override
+        protected void done() {
+            if (isCancelled()) {
+                return;
+            }
+            try {
+                get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof DBException) {
+                    Dialogs.showErrorDialog(parent, errorMessage, "Database error");
+                }
+                else if (cause instanceof ServerBusyException) {
+                    Dialogs.showErrorDialog(parent, cause.getMessage(), "Server busy");
+                }
+                else if (cause instanceof NetworkException) {
+                    Dialogs.showErrorDialog(parent, errorMessage, "Network error");
+                }
+                else {
+                    throw new RuntimeException(cause);
+                }
+            }
+        }
+    }
+
     /**
      * ActionListener for book button functionality.
      */
@@ -521,6 +624,9 @@ public class MainWindow extends JFrame implements Observer {
             } catch (RoomAlreadyBookedException ex) {
                 Dialogs.showErrorDialog(parent, "Sorry, this room is no longer available",
                         "Room already booked");
+            } catch (LockTimeoutException ex) {
+                Dialogs.showErrorDialog(parent, "This room is being booked by another customer,"
+                        + " please try again", "Room busy");
             }
             catch (RecordNotFoundException ex) {
                 Dialogs.showErrorDialog(parent, "Could not complete booking/n" + ex.getMessage(),
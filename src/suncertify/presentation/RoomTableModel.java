@@ -3,6 +3,7 @@ package suncertify.presentation;
 import suncertify.application.Room;
 
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 
 import javax.swing.table.AbstractTableModel;
@@ -98,4 +99,54 @@ public class RoomTableModel extends AbstractTableModel {
         this.fireTableDataChanged();
     }
     
+    /**
+     * Replaces the data of the room with the specified record number,
+     * or removes its row if the data is null.  Rooms that are not in
+     * the table are ignored.  Fires table rows updated or deleted 
+     * notification.
+     * @param recNo the record number of the room.
+     * @param data the new room data, or null if the room has been deleted.
+     */
+    public void updateRoom(int recNo, String[] data) {
+        int row = -1;
+        for (Map.Entry<Integer, Room> entry : roomMap.entrySet()) {
+            if (entry.getValue().getRecNo() == recNo) {
+                row = entry.getKey();
+                break;
+            }
+        }
+        if (row < 0) {
+            return;
+        }
+        if (data != null) {
+            roomMap.put(row, new Room(recNo, data));
+            this.fireTableRowsUpdated(row, row);
+            return;
+        }
+        Map<Integer, Room> rows = new LinkedHashMap<Integer, Room>();
+        for (Room room : roomMap.values()) {
+            if (room.getRecNo() != recNo) {
+                rows.put(rows.size(), room);
+            }
+        }
+        roomMap = rows;
+        this.fireTableRowsDeleted(row, row);
+    }
+    
+    /**
+     * Appends rooms to the table, after the rows already present.
+     * Fires table rows inserted notification.
+     * @param rooms the rooms to append.
+     */
+    public void addRooms(List<Room> rooms) {
+        if (rooms.isEmpty()) {
+            return;
+        }
+        int firstRow = roomMap.size();
+        for (Room room : rooms) {
+            roomMap.put(roomMap.size(), room);
+        }
+        this.fireTableRowsInserted(firstRow, roomMap.size() - 1);
+    }
+    
 }
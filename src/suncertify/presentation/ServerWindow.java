@@ -16,9 +16,12 @@ import javax.swing.event.DocumentListener;
 import javax.swing.filechooser.FileFilter;
 import javax.swing.filechooser.FileNameExtensionFilter;
 
+import suncertify.application.ApplicationMode;
 import suncertify.application.Configuration;
+import suncertify.application.PropertiesAccessor;
 import suncertify.db.DBException;
 import suncertify.network.NetworkException;
+import suncertify.network.RequestExecutorMode;
 import suncertify.network.Server;
 
 /**
@@ -106,6 +109,17 @@ public class ServerWindow extends JFrame {
      */
     private int port;
     
+    /**
+     * The kind of thread that the server executes requests on.
+     */
+    private RequestExecutorMode requestExecutor = RequestExecutorMode.PLATFORM;
+    
+    /**
+     * The maximum number of threads that the server
+     * executes requests on, if they are bounded.
+     */
+    private int maxRequestThreads = RequestExecutorMode.DEFAULT_MAX_THREADS;
+    
     /**
      * Class constructor.
      */
@@ -119,6 +133,8 @@ public class ServerWindow extends JFrame {
         
         if (config != null) {
             loadConfigurationData(config);
+            requestExecutor = config.getRequestExecutor();
+            maxRequestThreads = config.getMaxRequestThreads();
         }
         
         add(mainPanel);
@@ -259,7 +275,9 @@ public class ServerWindow extends JFrame {
         @Override
         public void actionPerformed(ActionEvent e) {
             try {
-				Server.startServer(databaseLocation, port);
+				Server.startServer(databaseLocation, port,
+				        PropertiesAccessor.getBinaryPort(ApplicationMode.SERVER),
+				        requestExecutor, maxRequestThreads);
 				startButton.setEnabled(false);
 		        exitButton.setEnabled(true);
 		        portTextField.setEditable(false);
@@ -0,0 +1,58 @@
+package test.db;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import suncertify.db.Data;
+import suncertify.db.LockManager;
+import suncertify.db.RecordChangeListener;
+
+public class BookRecordTest {
+
+    private Data data;
+
+    @Before
+    public void setUp() throws IOException {
+        File copy = File.createTempFile("db-1x3", ".db");
+        copy.deleteOnExit();
+        Files.copy(Paths.get("db-1x3.db"), copy.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        data = new Data(copy.getPath());
+    }
+
+    @Test
+    public void bookingSucceedsWhenLeaseExpiresBeforeRelease() throws Exception {
+        int recNo = 1;
+        while (!data.read(recNo)[6].equals("")) {
+            recNo++;
+        }
+        RecordChangeListener slowListener = new RecordChangeListener() {
+            @Override
+            public void recordChanged(int changedRecNo, String[] fields) {
+                try {
+                    Thread.sleep(1500);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+        LockManager.setLeaseTime(100);
+        data.addRecordChangeListener(slowListener);
+        try {
+            assertTrue(data.bookRecord(recNo, "12345678", 1000));
+        } finally {
+            data.removeRecordChangeListener(slowListener);
+            LockManager.setLeaseTime(LockManager.DEFAULT_LEASE_TIME);
+        }
+        assertEquals("12345678", data.read(recNo)[6]);
+    }
+
+}
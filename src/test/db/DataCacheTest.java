@@ -0,0 +1,132 @@
+package test.db;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import suncertify.db.Data;
+import suncertify.db.RecordChangeListener;
+import suncertify.db.RecordNotFoundException;
+import suncertify.db.SearchPage;
+import suncertify.db.SecurityException;
+import suncertify.db.StorageMode;
+
+public class DataCacheTest {
+    
+    private String dbLocation;
+    
+    @Before
+    public void setUp() throws IOException {
+        File copy = File.createTempFile("db-1x3", ".db");
+        copy.deleteOnExit();
+        Files.copy(Paths.get("db-1x3.db"), copy.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        dbLocation = copy.getPath();
+    }
+    
+    @Test
+    public void cachedFindMatchesFileFind() {
+        String[][] queries = {
+            {"", "", "", "", "", "", ""},
+            {"dew", null, null, null, null, null, null},
+            {null, "WHOVILLE", null, null, null, null, null},
+            {null, null, null, null, null, null, null}
+        };
+        for (String[] criteria : queries) {
+            int[] fromFile = new Data(dbLocation, StorageMode.FILE, false).find(criteria);
+            int[] fromCache = new Data(dbLocation, StorageMode.FILE, true).find(criteria);
+            assertArrayEquals(fromFile, fromCache);
+        }
+    }
+    
+    @Test
+    public void updateIsWrittenThrough() throws RecordNotFoundException, SecurityException {
+        Data data = new Data(dbLocation);
+        long cookie = data.lock(2);
+        String[] update = data.read(2);
+        update[6] = "12345678";
+        data.update(2, update, cookie);
+        data.unlock(2, cookie);
+        
+        assertArrayEquals(update, data.read(2));
+        assertArrayEquals(update, new Data(dbLocation, StorageMode.FILE, false).read(2));
+    }
+    
+    @Test(expected = RecordNotFoundException.class)
+    public void deletedRecordIsNotCached() throws RecordNotFoundException, SecurityException {
+        Data data = new Data(dbLocation);
+        long cookie = data.lock(2);
+        data.delete(2, cookie);
+        data.unlock(2, cookie);
+        data.read(2);
+    }
+    
+    @Test
+    public void pagedFindMatchesFind() {
+        String[] criteria = {null, null, null, null, null, null, null};
+        for (boolean cacheRecords : new boolean[] {false, true}) {
+            Data data = new Data(dbLocation, StorageMode.FILE, cacheRecords);
+            List<Integer> paged = new ArrayList<Integer>();
+            SearchPage page;
+            int fromRecNo = 0;
+            do {
+                page = data.findPage(criteria, fromRecNo, 2);
+                paged.addAll(page.getRecords().keySet());
+                fromRecNo = page.getNextRecNo();
+            } while (!page.isLastPage());
+            
+            assertEquals(new ArrayList<Integer>(data.findRecords(criteria).keySet()), paged);
+        }
+    }
+    
+    @Test
+    public void batchReadSkipsDeletedRecords() throws RecordNotFoundException, SecurityException {
+        Data data = new Data(dbLocation);
+        long cookie = data.lock(3);
+        data.delete(3, cookie);
+        data.unlock(3, cookie);
+        
+        int[] recNos = {4, 3, 1, 99999};
+        for (boolean cacheRecords : new boolean[] {false, true}) {
+            Map<Integer, String[]> records 
+                    = new Data(dbLocation, StorageMode.FILE, cacheRecords).readRecords(recNos);
+            assertEquals(Arrays.asList(1, 4), new ArrayList<Integer>(records.keySet()));
+            assertArrayEquals(data.read(4), records.get(4));
+        }
+    }
+    
+    @Test
+    public void failingListenerDoesNotFailUpdate() throws RecordNotFoundException, SecurityException {
+        Data data = new Data(dbLocation);
+        RecordChangeListener listener = new RecordChangeListener() {
+            @Override
+            public void recordChanged(int recNo, String[] data) {
+                throw new IllegalStateException("listener failed");
+            }
+        };
+        data.addRecordChangeListener(listener);
+        try {
+            long cookie = data.lock(2);
+            String[] update = data.read(2);
+            update[6] = "87654321";
+            data.update(2, update, cookie);
+            data.unlock(2, cookie);
+            
+            assertArrayEquals(update, data.read(2));
+        } finally {
+            data.removeRecordChangeListener(listener);
+        }
+    }
+
+}
@@ -0,0 +1,94 @@
+package test.db;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import suncertify.db.Data;
+import suncertify.db.DatabaseMetricsMXBean;
+import suncertify.db.DuplicateKeyException;
+import suncertify.db.LockManager;
+import suncertify.db.LockMetricsMXBean;
+import suncertify.db.LockTimeoutException;
+import suncertify.db.RecordNotFoundException;
+import suncertify.db.SecurityException;
+
+public class DataMetricsTest {
+
+    private Data data;
+
+    @Before
+    public void setUp() throws IOException {
+        File copy = File.createTempFile("db-1x3", ".db");
+        copy.deleteOnExit();
+        Files.copy(Paths.get("db-1x3.db"), copy.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        data = new Data(copy.getPath());
+    }
+
+    @Test
+    public void operationsAreCounted() throws RecordNotFoundException, SecurityException {
+        DatabaseMetricsMXBean metrics = Data.getMetrics();
+        long reads = metrics.getRead().getCount();
+        long finds = metrics.getFind().getCount();
+        long updates = metrics.getUpdate().getCount();
+
+        int[] found = data.find(new String[] {"", null, null, null, null, null, null});
+        long cookie = data.lock(2);
+        data.update(2, data.read(2), cookie);
+        data.unlock(2, cookie);
+
+        assertEquals(reads + 1, metrics.getRead().getCount());
+        assertEquals(finds + 1, metrics.getFind().getCount());
+        assertEquals(updates + 1, metrics.getUpdate().getCount());
+        assertEquals(found.length, metrics.getRecordCount());
+    }
+
+    @Test
+    public void recordCountFollowsCreatesAndDeletes()
+            throws RecordNotFoundException, SecurityException, DuplicateKeyException {
+        DatabaseMetricsMXBean metrics = Data.getMetrics();
+        int count = metrics.getRecordCount();
+
+        String[] record = data.read(2);
+        record[0] = "Metrics Inn";
+        int recNo = data.create(record);
+        record[0] = "Metrics Inn 2";
+        String[] other = record.clone();
+        other[0] = "Metrics Inn 3";
+        data.createRecords(new String[][] {record, other});
+        assertEquals(count + 3, metrics.getRecordCount());
+
+        long cookie = data.lock(recNo);
+        data.delete(recNo, cookie);
+        data.unlock(recNo, cookie);
+        assertEquals(count + 2, metrics.getRecordCount());
+    }
+
+    @Test
+    public void lockTimeoutsAreCounted() throws RecordNotFoundException, SecurityException {
+        LockMetricsMXBean metrics = LockManager.getMetrics();
+        long timeouts = metrics.getLockTimeouts();
+        int lockedRecords = metrics.getLockedRecords();
+
+        long cookie = data.lock(3);
+        assertEquals(lockedRecords + 1, metrics.getLockedRecords());
+        try {
+            data.tryLock(3, 10);
+            fail("Record 3 should still be locked");
+        } catch (LockTimeoutException e) {
+            assertEquals(timeouts + 1, metrics.getLockTimeouts());
+        } finally {
+            data.unlock(3, cookie);
+        }
+        assertEquals(lockedRecords, metrics.getLockedRecords());
+    }
+
+}
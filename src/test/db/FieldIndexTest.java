@@ -0,0 +1,77 @@
+package test.db;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import suncertify.db.Data;
+import suncertify.db.StorageMode;
+
+public class FieldIndexTest {
+
+    private String dbLocation;
+
+    @Before
+    public void setUp() throws IOException {
+        File copy = File.createTempFile("db-1x3", ".db");
+        copy.deleteOnExit();
+        Files.copy(Paths.get("db-1x3.db"), copy.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        dbLocation = copy.getPath();
+    }
+
+    @Test
+    public void findByIndexedFieldSeesRecordDuringUpdates() throws Exception {
+        for (boolean cacheRecords : new boolean[] {false, true}) {
+            final Data data = new Data(dbLocation, StorageMode.FILE, cacheRecords);
+            final String[] record = data.read(2);
+            final AtomicBoolean stop = new AtomicBoolean();
+            final AtomicReference<Exception> failure = new AtomicReference<Exception>();
+
+            Thread updater = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        for (int i = 0; !stop.get(); i++) {
+                            long cookie = data.lock(2);
+                            String[] update = record.clone();
+                            update[6] = (i % 2 == 0) ? "12345678" : "";
+                            data.update(2, update, cookie);
+                            data.unlock(2, cookie);
+                        }
+                    } catch (Exception e) {
+                        failure.set(e);
+                    }
+                }
+            };
+            updater.start();
+            try {
+                String[] byName = {record[0], null, null, null, null, null, null};
+                String[] byLocation = {null, record[1], null, null, null, null, null};
+                for (int i = 0; i < 2000; i++) {
+                    assertTrue(contains(data.find(byName), 2));
+                    assertTrue(contains(data.find(byLocation), 2));
+                }
+            } finally {
+                stop.set(true);
+                updater.join();
+            }
+            assertEquals(null, failure.get());
+        }
+    }
+
+    private static boolean contains(int[] recNos, int recNo) {
+        return Arrays.binarySearch(recNos, recNo) >= 0;
+    }
+
+}
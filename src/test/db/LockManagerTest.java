@@ -1,12 +1,16 @@
 package test.db;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 import org.junit.Test;
 
 import suncertify.db.LockManager;
+import suncertify.db.LockTimeoutException;
 import suncertify.db.RecordNotFoundException;
 import suncertify.db.SecurityException;
 
@@ -41,5 +45,68 @@ public class LockManagerTest {
         long illegalCookie = 11L;
         manager.unlockRecord(1, illegalCookie);
     }
+    
+    @Test(expected=LockTimeoutException.class)
+    public void tryLockWithoutWaitingTest() throws Exception {
+        long cookie = manager.lockRecord(10);
+        try {
+            manager.tryLockRecord(10, 0, TimeUnit.MILLISECONDS);
+        } finally {
+            manager.unlockRecord(10, cookie);
+        }
+    }
+    
+    @Test
+    public void tryLockTimeoutTest() throws Exception {
+        long cookie = manager.lockRecord(11);
+        long start = System.nanoTime();
+        try {
+            manager.tryLockRecord(11, 200, TimeUnit.MILLISECONDS);
+        } catch (LockTimeoutException e) {
+            long waited = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            assertTrue(waited >= 200);
+            return;
+        } finally {
+            manager.unlockRecord(11, cookie);
+        }
+        throw new AssertionError("Expected LockTimeoutException");
+    }
+    
+    @Test
+    public void tryLockAfterUnlockTest() throws Exception {
+        final long cookie = manager.lockRecord(12);
+        Thread unlocker = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(100);
+                    manager.unlockRecord(12, cookie);
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        });
+        unlocker.start();
+        
+        long newCookie = manager.tryLockRecord(12, 10, TimeUnit.SECONDS);
+        assertEquals(newCookie, (long) manager.getLockMap().get(12));
+        manager.unlockRecord(12, newCookie);
+        unlocker.join();
+    }
+    
+    @Test
+    public void expiredLeaseTest() throws Exception {
+        LockManager.setLeaseTime(200);
+        try {
+            long cookie = manager.lockRecord(13);
+            long newCookie = manager.tryLockRecord(13, 10, TimeUnit.SECONDS);
+            assertTrue(newCookie != cookie);
+            assertFalse(manager.renewLease(13, cookie));
+            assertTrue(manager.renewLease(13, newCookie));
+            manager.unlockRecord(13, newCookie);
+        } finally {
+            LockManager.setLeaseTime(LockManager.DEFAULT_LEASE_TIME);
+        }
+    }
 
 }